@@ -0,0 +1,276 @@
+package proj3;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Benchmarks every stage of the Huffman pipeline separately: counting the
+ * input (readFile), building the tree (createEncodingTree, and the array
+ * based HuffmanLengths), building the code table (createEncodingTable and
+ * findCodes), encodeFile and decodeFile, and the priority queues used to
+ * build trees.
+ *
+ * Each stage is run until the timer settles, then timed over a number of
+ * iterations; the median is reported in MB/s of input and ns per symbol.
+ * Everything the stages print is thrown away while they are timed.
+ *
+ * Usage: java proj3.PipelineBenchmark [-warmup=N] [-iterations=N] [files...]
+ * With no files, the project's sample files are used together with random
+ * and skewed data made up on the spot.
+ */
+public class PipelineBenchmark {
+
+	/**
+	 * Shortest time an iteration is allowed to take; faster stages are repeated
+	 */
+	private static final long MIN_ITERATION_NANOS = 20000000L;
+	/**
+	 * Size of the made up corpora
+	 */
+	private static final int SYNTHETIC_SIZE = 1 << 20;
+	/**
+	 * Number of items pushed through the priority queues
+	 */
+	private static final int QUEUE_ITEMS = 100000;
+
+	/**
+	 * Untimed iterations run before measuring
+	 */
+	private static int warmup = 5;
+	/**
+	 * Timed iterations
+	 */
+	private static int iterations = 10;
+	/**
+	 * Where the results go; System.out is silenced while stages run
+	 */
+	private static PrintStream report = System.out;
+	/**
+	 * Stream that throws away everything the stages print
+	 */
+	private static final PrintStream SILENT = new PrintStream(OutputStream.nullOutputStream());
+
+	/**
+	 * One stage of the pipeline
+	 */
+	private interface Stage
+	{
+		void run() throws IOException;
+	}
+
+	/**
+	 * Runs the benchmarks
+	 * @param args - options and the files to use as corpora
+	 * @throws IOException - file IO error
+	 */
+	public static void main(String[] args) throws IOException
+	{
+		ArrayList<String> files = new ArrayList<String>();
+		for (String arg : args)
+		{
+			if (arg.startsWith("-warmup="))
+				warmup = Integer.parseInt(arg.substring("-warmup=".length()));
+			else if (arg.startsWith("-iterations="))
+				iterations = Integer.parseInt(arg.substring("-iterations=".length()));
+			else
+				files.add(arg);
+		}
+
+		report.printf("%-12s %-28s %12s %10s %12s%n", "corpus", "stage", "ms/op", "MB/s", "ns/symbol");
+		if (files.isEmpty())
+		{
+			benchmarkFile("alice", "alice_in_wonderland.txt", FileHeader.ALPHABET_CHARS);
+			benchmarkFile("in.txt", "in.txt", FileHeader.ALPHABET_BYTES);
+			benchmarkFile("random", makeCorpus("random", false), FileHeader.ALPHABET_BYTES);
+			benchmarkFile("skewed", makeCorpus("skewed", true), FileHeader.ALPHABET_BYTES);
+		}
+		else
+			for (String file : files)
+				benchmarkFile(new File(file).getName(), file, FileHeader.ALPHABET_BYTES);
+		benchmarkQueues();
+	}
+
+	/**
+	 * Benchmarks every stage of compressing and decompressing one file
+	 * @param name - the name of the corpus in the results
+	 * @param file - the name of the file
+	 * @param mode - FileHeader.ALPHABET_CHARS or FileHeader.ALPHABET_BYTES
+	 * @throws IOException - file IO error
+	 */
+	private static void benchmarkFile(String name, String file, int mode) throws IOException
+	{
+		if (!new File(file).isFile())
+		{
+			report.println("Skipping missing file " + file);
+			return;
+		}
+		long bytes = new File(file).length();
+		File compressed = File.createTempFile("bench", ".huf");
+		File decompressed = File.createTempFile("bench", ".out");
+		compressed.deleteOnExit();
+		decompressed.deleteOnExit();
+
+		System.setOut(SILENT);
+		long[] counts = Proj3.readCounts(file, mode);
+		System.setOut(report);
+		long symbols = 0;
+		for (long count : counts)
+			symbols += count;
+
+		BinaryTree<CharacterMapping> tree = Proj3.createEncodingTree(Proj3.createForest(counts));
+		print(name, "readFile", measure(() -> Proj3.readFile(file, mode)), bytes, symbols);
+		print(name, "createEncodingTree", measure(() -> Proj3.createEncodingTree(Proj3.createForest(counts))), bytes, symbols);
+		print(name, "HuffmanLengths.build", measure(() -> HuffmanLengths.build(counts)), bytes, symbols);
+		print(name, "HuffmanLengths.buildWithHeap", measure(() -> HuffmanLengths.buildWithHeap(counts, HuffmanLengths.HEAP_ARITY)), bytes, symbols);
+		print(name, "createEncodingTable(tree)", measure(() -> Proj3.createEncodingTable(tree)), bytes, symbols);
+		print(name, "findCodes", measure(() -> Proj3.findCodes(tree.getRoot(), "")), bytes, symbols);
+		print(name, "createEncodingTable(counts)", measure(() -> Proj3.createEncodingTable(counts)), bytes, symbols);
+		print(name, "encodeFile", measure(() -> Proj3.encodeFile(file, compressed.getPath())), bytes, symbols);
+		print(name, "decodeFile", measure(() -> Proj3.decodeFile(compressed.getPath(), decompressed.getPath())), bytes, symbols);
+		if (mode == FileHeader.ALPHABET_BYTES)
+		{
+			int blockSize = BlockCompressor.DEFAULT_BLOCK_SIZE;
+			print(name, "compressInterleaved", measure(() -> Proj3.compressInterleaved(file, compressed.getPath(), blockSize)), bytes, symbols);
+			print(name, "decodeFile (4 streams)", measure(() -> Proj3.decodeFile(compressed.getPath(), decompressed.getPath())), bytes, symbols);
+		}
+
+		compressed.delete();
+		decompressed.delete();
+	}
+
+	/**
+	 * Benchmarks adding and removing items through the generic PriorityQueue of
+	 * trees and through the primitive DaryHeap of each arity
+	 * @throws IOException - not thrown by the queues
+	 */
+	private static void benchmarkQueues() throws IOException
+	{
+		Random random = new Random(341);
+		long[] priorities = new long[QUEUE_ITEMS];
+		int[] payloads = new int[QUEUE_ITEMS];
+		ArrayList<BinaryTree<CharacterMapping>> trees = new ArrayList<BinaryTree<CharacterMapping>>();
+		for (int i = 0; i < QUEUE_ITEMS; i++)
+		{
+			priorities[i] = random.nextInt(1 << 20);
+			payloads[i] = i;
+			ArrayList<Character> chrs = new ArrayList<Character>();
+			chrs.add((char) i);
+			trees.add(new BinaryTree<CharacterMapping>(new CharacterMapping(chrs, priorities[i])));
+		}
+
+		print("queue", "PriorityQueue add/remove", measure(() -> {
+			PriorityQueue<BinaryTree<CharacterMapping>> queue = new PriorityQueue<BinaryTree<CharacterMapping>>();
+			for (BinaryTree<CharacterMapping> tree : trees)
+				queue.add(tree);
+			while (!queue.isEmpty())
+				queue.remove();
+		}), 0, QUEUE_ITEMS);
+		for (int arity = 2; arity <= 8; arity *= 2)
+		{
+			DaryHeap heap = new DaryHeap(arity, QUEUE_ITEMS);
+			print("queue", "DaryHeap(" + arity + ") add/remove", measure(() -> {
+				for (int i = 0; i < QUEUE_ITEMS; i++)
+					heap.add(priorities[i], payloads[i]);
+				while (!heap.isEmpty())
+					heap.remove();
+			}), 0, QUEUE_ITEMS);
+			print("queue", "DaryHeap(" + arity + ") heapify/remove", measure(() -> {
+				heap.heapify(priorities, payloads, QUEUE_ITEMS);
+				while (!heap.isEmpty())
+					heap.remove();
+			}), 0, QUEUE_ITEMS);
+		}
+	}
+
+	/**
+	 * Times a stage, repeating it within each iteration if it is too fast to time
+	 * @param stage - the stage
+	 * @return the median time of one run in nanoseconds
+	 * @throws IOException - file IO error in the stage
+	 */
+	private static double measure(Stage stage) throws IOException
+	{
+		System.setOut(SILENT);
+		try
+		{
+			int reps = 1;
+			while (time(stage, reps) < MIN_ITERATION_NANOS && reps < (1 << 20))
+				reps *= 2;
+			for (int i = 0; i < warmup; i++)
+				time(stage, reps);
+
+			long[] times = new long[iterations];
+			for (int i = 0; i < iterations; i++)
+				times[i] = time(stage, reps);
+			Arrays.sort(times);
+			return (double) times[iterations / 2] / reps;
+		}
+		finally
+		{
+			System.setOut(report);
+		}
+	}
+
+	/**
+	 * Runs a stage a number of times
+	 * @param stage - the stage
+	 * @param reps - the number of runs
+	 * @return the time taken in nanoseconds
+	 * @throws IOException - file IO error in the stage
+	 */
+	private static long time(Stage stage, int reps) throws IOException
+	{
+		long start = System.nanoTime();
+		for (int i = 0; i < reps; i++)
+			stage.run();
+		return System.nanoTime() - start;
+	}
+
+	/**
+	 * Prints one line of results
+	 * @param corpus - the name of the corpus
+	 * @param stage - the name of the stage
+	 * @param nanos - the time of one run
+	 * @param bytes - the size of the corpus in bytes, 0 if it is not a file
+	 * @param symbols - the number of symbols handled by one run
+	 */
+	private static void print(String corpus, String stage, double nanos, long bytes, long symbols)
+	{
+		String rate = (bytes == 0) ? "-" : String.format("%.1f", bytes / (nanos / 1e9) / 1e6);
+		report.printf("%-12s %-28s %12.3f %10s %12.2f%n", corpus, stage, nanos / 1e6, rate, nanos / Math.max(1, symbols));
+	}
+
+	/**
+	 * Writes a made up corpus to a temporary file
+	 * @param name - the name of the corpus
+	 * @param skewed - true for byte values of geometrically falling frequency,
+	 *                 false for uniformly random bytes
+	 * @return the name of the file
+	 * @throws IOException - file IO error
+	 */
+	private static String makeCorpus(String name, boolean skewed) throws IOException
+	{
+		Random random = new Random(name.hashCode());
+		byte[] data = new byte[SYNTHETIC_SIZE];
+		for (int i = 0; i < data.length; i++)
+		{
+			if (skewed) //byte k turns up about half as often as byte k - 1
+				data[i] = (byte) Math.min(255, Long.numberOfTrailingZeros(random.nextLong() | (1L << 40)));
+			else
+				data[i] = (byte) random.nextInt(256);
+		}
+
+		File file = File.createTempFile(name, ".bin");
+		file.deleteOnExit();
+		OutputStream out = new FileOutputStream(file);
+		out.write(data);
+		out.close();
+		return file.getPath();
+	}
+}
@@ -0,0 +1,336 @@
+package proj3;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * One-pass adaptive Huffman coder (the FGK algorithm) over the byte alphabet
+ * plus an end of file symbol. The encoder and the decoder start from the same
+ * empty tree and update it the same way after every symbol, so no counting
+ * pass and no code table are needed and output starts with the first byte.
+ *
+ * A symbol seen for the first time is sent as the code of the NYT (not yet
+ * transmitted) leaf followed by the symbol in SYMBOL_BITS plain bits.
+ *
+ * The tree keeps the sibling property: when nodes are listed by number, their
+ * weights never decrease, and siblings are next to each other. Nodes are kept
+ * in arrays indexed by node number, with the root at the highest number.
+ *
+ * Layout of a compressed stream, big-endian:
+ *   int    magic number "HUFA"
+ *   byte   format version
+ *   the coded bits, ending with the end of file symbol
+ */
+public class AdaptiveHuffman {
+
+	/**
+	 * Magic number identifying an adaptively compressed stream
+	 */
+	public static final int MAGIC = 0x48554641;
+	/**
+	 * Current format version
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * Number of symbols: the 256 byte values and the end of file symbol
+	 */
+	public static final int ALPHABET_SIZE = Proj3.EOF_SYMBOL + 1;
+	/**
+	 * Number of plain bits used to send a new symbol
+	 */
+	private static final int SYMBOL_BITS = 9;
+	/**
+	 * Number of nodes in a tree holding every symbol
+	 */
+	private static final int MAX_NODES = 2 * ALPHABET_SIZE + 1;
+	/**
+	 * Node number of the root
+	 */
+	private static final int ROOT = MAX_NODES - 1;
+	/**
+	 * Marks a missing node or symbol
+	 */
+	private static final int NONE = -1;
+
+	/**
+	 * Weight of each node
+	 */
+	private long[] weight;
+	/**
+	 * Parent of each node
+	 */
+	private int[] parent;
+	/**
+	 * Left child of each node
+	 */
+	private int[] left;
+	/**
+	 * Right child of each node
+	 */
+	private int[] right;
+	/**
+	 * Symbol of each leaf, NONE for internal nodes and the NYT leaf
+	 */
+	private int[] symbol;
+	/**
+	 * Leaf of each symbol, NONE for symbols not seen yet
+	 */
+	private int[] leafOf;
+	/**
+	 * The NYT leaf
+	 */
+	private int nyt;
+	/**
+	 * Bits of a code, gathered from the leaf up, 64 at a time
+	 */
+	private long[] path;
+
+	/**
+	 * Constructor for a tree holding only the NYT leaf
+	 */
+	public AdaptiveHuffman()
+	{
+		weight = new long[MAX_NODES];
+		parent = new int[MAX_NODES];
+		left = new int[MAX_NODES];
+		right = new int[MAX_NODES];
+		symbol = new int[MAX_NODES];
+		leafOf = new int[ALPHABET_SIZE];
+		path = new long[MAX_NODES / 64 + 1];
+		for (int i = 0; i < MAX_NODES; i++)
+		{
+			parent[i] = NONE;
+			left[i] = NONE;
+			right[i] = NONE;
+			symbol[i] = NONE;
+		}
+		for (int i = 0; i < ALPHABET_SIZE; i++)
+			leafOf[i] = NONE;
+		nyt = ROOT;
+	}
+
+	/**
+	 * Writes the code of a symbol and updates the tree
+	 * @param s - the symbol, a byte value or the end of file symbol
+	 * @param out - the compressed bits
+	 * @throws IOException - IO error
+	 */
+	public void encode(int s, BitOutput out) throws IOException
+	{
+		int node = leafOf[s];
+		boolean isNew = (node == NONE);
+		if (isNew)
+			node = nyt;
+		writePath(node, out);
+		if (isNew)
+			out.writeBits(s, SYMBOL_BITS);
+		update(s);
+	}
+
+	/**
+	 * Reads the code of a symbol and updates the tree
+	 * @param in - the compressed bits
+	 * @return the symbol, or -1 if the bits ran out
+	 * @throws IOException - IO error
+	 */
+	public int decode(BitInput in) throws IOException
+	{
+		int node = ROOT;
+		while (left[node] != NONE)
+		{
+			int bit = in.peek(1);
+			if (!in.consume(1))
+				return -1;
+			node = (bit == 0) ? left[node] : right[node];
+		}
+
+		int s = symbol[node];
+		if (node == nyt)
+		{
+			s = in.peek(SYMBOL_BITS);
+			if (!in.consume(SYMBOL_BITS) || s >= ALPHABET_SIZE || leafOf[s] != NONE)
+				return -1;
+		}
+		update(s);
+		return s;
+	}
+
+	/**
+	 * Compresses a stream in one pass
+	 * @param in - the data to be compressed
+	 * @param out - receives the compressed stream
+	 * @throws IOException - IO error
+	 */
+	public static void compress(InputStream in, OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.flush();
+
+		AdaptiveHuffman coder = new AdaptiveHuffman();
+		BitOutput bits = new BitOutput(out);
+		byte[] buffer = new byte[1 << 16];
+		int n = in.read(buffer);
+		while (n != -1)
+		{
+			for (int i = 0; i < n; i++)
+				coder.encode(buffer[i] & 0xFF, bits);
+			//Send what is coded before waiting for more, for live feeds
+			bits.flushWholeBytes();
+			n = in.read(buffer);
+		}
+		coder.encode(Proj3.EOF_SYMBOL, bits);
+		bits.flush();
+	}
+
+	/**
+	 * Decompresses a stream written by compress
+	 * @param in - the compressed stream
+	 * @param out - receives the original data
+	 * @throws IOException - IO error, or the data is not an adaptively compressed stream
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not an adaptively compressed stream");
+		int version = data.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported format version " + version);
+
+		AdaptiveHuffman coder = new AdaptiveHuffman();
+		BitInput bits = new BitInput(in);
+		byte[] buffer = new byte[1 << 16];
+		int pos = 0;
+		int s = coder.decode(bits);
+		while (s != Proj3.EOF_SYMBOL)
+		{
+			if (s == -1)
+				throw new IOException("Compressed stream is truncated or corrupt");
+			if (pos == buffer.length)
+			{
+				out.write(buffer, 0, pos);
+				pos = 0;
+			}
+			buffer[pos++] = (byte) s;
+			s = coder.decode(bits);
+		}
+		out.write(buffer, 0, pos);
+		out.flush();
+	}
+
+	/**
+	 * Writes the bits on the path from the root to a node
+	 * @param node - the node
+	 * @param out - the compressed bits
+	 * @throws IOException - IO error
+	 */
+	private void writePath(int node, BitOutput out) throws IOException
+	{
+		//Gather the bits from the node up to the root, last bit first
+		int chunks = 0;
+		long code = 0;
+		int len = 0;
+		while (node != ROOT)
+		{
+			int p = parent[node];
+			if (right[p] == node)
+				code |= 1L << len;
+			len++;
+			if (len == 64)
+			{
+				path[chunks++] = code;
+				code = 0;
+				len = 0;
+			}
+			node = p;
+		}
+
+		//The last chunk gathered holds the first bits of the code
+		out.writeBits(code, len);
+		while (chunks > 0)
+			out.writeBits(path[--chunks], 64);
+	}
+
+	/**
+	 * Adds one to the count of a symbol, moving nodes to keep the sibling property
+	 * @param s - the symbol just coded
+	 */
+	private void update(int s)
+	{
+		int node = leafOf[s];
+		if (node == NONE)
+		{
+			//Split the NYT leaf into a new NYT leaf and a leaf for the symbol
+			int oldNyt = nyt;
+			nyt = oldNyt - 2;
+			node = oldNyt - 1;
+			left[oldNyt] = nyt;
+			right[oldNyt] = node;
+			parent[nyt] = oldNyt;
+			parent[node] = oldNyt;
+			symbol[node] = s;
+			leafOf[s] = node;
+		}
+
+		while (node != NONE)
+		{
+			//Move the node to the highest number holding its weight
+			int leader = node;
+			while (leader < ROOT && weight[leader + 1] == weight[node])
+				leader++;
+			if (leader != node && leader != parent[node])
+			{
+				swap(node, leader);
+				node = leader;
+			}
+			weight[node]++;
+			node = parent[node];
+		}
+	}
+
+	/**
+	 * Swaps the subtrees at two node numbers of equal weight. The parents stay
+	 * where they are; the subtrees trade places under them.
+	 * @param a - one node
+	 * @param b - the other node
+	 */
+	private void swap(int a, int b)
+	{
+		int t = symbol[a];
+		symbol[a] = symbol[b];
+		symbol[b] = t;
+		t = left[a];
+		left[a] = left[b];
+		left[b] = t;
+		t = right[a];
+		right[a] = right[b];
+		right[b] = t;
+
+		reattach(a);
+		reattach(b);
+		if (nyt == a)
+			nyt = b;
+		else if (nyt == b)
+			nyt = a;
+	}
+
+	/**
+	 * Points the children or the symbol of a node back at the node after a swap
+	 * @param node - the node whose contents moved
+	 */
+	private void reattach(int node)
+	{
+		if (left[node] != NONE)
+		{
+			parent[left[node]] = node;
+			parent[right[node]] = node;
+		}
+		else if (symbol[node] != NONE)
+			leafOf[symbol[node]] = node;
+	}
+}
@@ -0,0 +1,704 @@
+package proj3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Archive of many files, each compressed on its own in the byte alphabet.
+ * Members are read and compressed concurrently on a pool of worker threads
+ * and written in the order they were given. A central directory at the end
+ * of the archive lets one member be extracted without reading the others.
+ *
+ * Layout, big-endian:
+ *   int    magic number "HUFR"
+ *   byte   format version
+ *   then for each member, in order, either:
+ *   frames the member in blocks of up to BlockCompressor.DEFAULT_BLOCK_SIZE
+ *          bytes, each as an int frame length followed by the frame, ending
+ *          with an int 0
+ *   or, for a member whose frames would be no smaller than the member itself:
+ *   bytes  the member as it is
+ *   then the central directory, for each member:
+ *   UTF    the name of the member, with / between directories
+ *   long   position of its data
+ *   long   number of bytes its data takes up, a final 0 included
+ *   long   number of bytes it decompresses to
+ *   int    CRC-32 of the original bytes
+ *   byte   METHOD_FRAMES or METHOD_STORED (absent in version 1, where every
+ *          member is in frames)
+ *   and finally:
+ *   int    number of members
+ *   long   position of the central directory
+ *   int    magic number "HUFD"
+ */
+public class Archive {
+
+	/**
+	 * Magic number identifying an archive
+	 */
+	public static final int MAGIC = 0x48554652;
+	/**
+	 * Magic number ending the central directory
+	 */
+	public static final int DIRECTORY_MAGIC = 0x48554644;
+	/**
+	 * Current format version
+	 */
+	public static final int VERSION = 2;
+	/**
+	 * The member is stored as compressed frames
+	 */
+	public static final int METHOD_FRAMES = 0;
+	/**
+	 * The member is stored as it is
+	 */
+	public static final int METHOD_STORED = 1;
+	/**
+	 * Number of bytes before the first member
+	 */
+	private static final int HEADER_SIZE = 5;
+	/**
+	 * Number of bytes after the last directory entry
+	 */
+	private static final int TRAILER_SIZE = 16;
+	/**
+	 * Size of the buffer stored members are copied through
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * One member of an archive as listed in the central directory
+	 */
+	public static class Member
+	{
+		private String name;
+		private long position;
+		private long length;
+		private long size;
+		private int crc;
+		private boolean stored;
+
+		public Member(String name, long position, long length, long size, int crc, boolean stored)
+		{
+			this.name = name;
+			this.position = position;
+			this.length = length;
+			this.size = size;
+			this.crc = crc;
+			this.stored = stored;
+		}
+
+		/**
+		 * Gets the name of the member
+		 * @return the name, with / between directories
+		 */
+		public String getName()
+		{
+			return name;
+		}
+
+		/**
+		 * Gets the number of bytes the member takes up in the archive
+		 * @return the compressed size
+		 */
+		public long getLength()
+		{
+			return length;
+		}
+
+		/**
+		 * Gets the number of bytes the member decompresses to
+		 * @return the original size
+		 */
+		public long getSize()
+		{
+			return size;
+		}
+
+		/**
+		 * Tells whether the member is stored as it is rather than compressed
+		 * @return true for a stored member
+		 */
+		public boolean isStored()
+		{
+			return stored;
+		}
+	}
+
+	/**
+	 * The worker threads
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * Largest number of members being compressed or waiting to be written at once
+	 */
+	private int window;
+	/**
+	 * Longest code length allowed in a member's codes
+	 */
+	private int maxCodeLength = CanonicalCode.MAX_CODE_LENGTH;
+	/**
+	 * Cache of codes shared by the members, or null
+	 */
+	private CodeCache cache;
+	/**
+	 * Estimate of the memory held in buffers by the last create or extractAll
+	 */
+	private long memoryUse;
+
+	/**
+	 * Constructor which initializes the data members
+	 * @param threads - the number of worker threads
+	 */
+	public Archive(int threads)
+	{
+		if (threads < 1)
+			throw new IllegalArgumentException("threads must be positive");
+		this.pool = new ForkJoinPool(threads);
+		this.window = 2 * threads;
+	}
+
+	/**
+	 * Limits the length of the codes of every member
+	 * @param maxLength - the longest code length allowed
+	 */
+	public void setMaxCodeLength(int maxLength)
+	{
+		if (maxLength < 1 || maxLength > CanonicalCode.MAX_CODE_LENGTH)
+			throw new IllegalArgumentException("Bad maximum code length " + maxLength);
+		maxCodeLength = maxLength;
+	}
+
+	/**
+	 * Lets members with similar contents share codes
+	 * @param cache - the cache of codes, or null to build a code for every block
+	 */
+	public void setCodeCache(CodeCache cache)
+	{
+		this.cache = cache;
+	}
+
+	/**
+	 * Finds the files to archive. A directory is searched for files, in order of
+	 * name, and members are named by their path below it; any other file is read
+	 * as a list of file names, one per line, and members keep those names.
+	 * @param source - a directory, or a file listing files
+	 * @param names - receives the name of each member
+	 * @return the files, in the same order as the names
+	 * @throws IOException - file IO error
+	 */
+	public static ArrayList<File> findFiles(File source, ArrayList<String> names) throws IOException
+	{
+		ArrayList<File> files = new ArrayList<File>();
+		if (source.isDirectory())
+		{
+			addFiles(source, "", files, names);
+			return files;
+		}
+
+		BufferedReader reader = new BufferedReader(new FileReader(source));
+		try
+		{
+			String line = reader.readLine();
+			while (null != line)
+			{
+				if (!line.trim().isEmpty())
+				{
+					files.add(new File(line));
+					names.add(memberName(line));
+				}
+				line = reader.readLine();
+			}
+		}
+		finally
+		{
+			reader.close();
+		}
+		return files;
+	}
+
+	/**
+	 * Compresses files into an archive. Up to two members per thread are held
+	 * in memory at once, each as its compressed frames.
+	 * @param files - the files
+	 * @param names - the name of each member
+	 * @param out - receives the archive
+	 * @return the total number of bytes of the files
+	 * @throws IOException - file IO error
+	 */
+	public long create(ArrayList<File> files, ArrayList<String> names, OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+
+		ArrayDeque<MemberTask> pending = new ArrayDeque<MemberTask>();
+		ArrayList<Member> members = new ArrayList<Member>();
+		long position = HEADER_SIZE;
+		long total = 0;
+		long largest = 0;
+		for (int i = 0; i < files.size(); i++)
+		{
+			MemberTask task = new MemberTask(files.get(i), names.get(i), maxCodeLength, cache);
+			pool.execute(task);
+			pending.add(task);
+			if (pending.size() >= window)
+			{
+				CompressedMember member = BlockCompressor.join(pending.remove());
+				largest = Math.max(largest, member.buffers);
+				position = writeMember(data, member, members, position);
+			}
+		}
+		while (!pending.isEmpty())
+		{
+			CompressedMember member = BlockCompressor.join(pending.remove());
+			largest = Math.max(largest, member.buffers);
+			position = writeMember(data, member, members, position);
+		}
+		memoryUse = largest * Math.min(window, files.size());
+
+		for (Member member : members)
+		{
+			data.writeUTF(member.name);
+			data.writeLong(member.position);
+			data.writeLong(member.length);
+			data.writeLong(member.size);
+			data.writeInt(member.crc);
+			data.writeByte(member.stored ? METHOD_STORED : METHOD_FRAMES);
+			total += member.size;
+		}
+		data.writeInt(members.size());
+		data.writeLong(position);
+		data.writeInt(DIRECTORY_MAGIC);
+		data.flush();
+		return total;
+	}
+
+	/**
+	 * Reads the central directory of an archive
+	 * @param archiveFile - the archive
+	 * @return the members, in the order they are stored
+	 * @throws IOException - file IO error, or the file is not an archive
+	 */
+	public static ArrayList<Member> list(File archiveFile) throws IOException
+	{
+		FileChannel channel = FileChannel.open(archiveFile.toPath(), StandardOpenOption.READ);
+		try
+		{
+			long end = channel.size();
+			if (end < HEADER_SIZE + TRAILER_SIZE)
+				throw new IOException("Not an archive");
+			ByteBuffer header = BlockIndex.readFully(channel, 0, HEADER_SIZE);
+			if (header.getInt() != MAGIC)
+				throw new IOException("Not an archive");
+			int version = header.get() & 0xFF;
+			if (version < 1 || version > VERSION)
+				throw new IOException("Unsupported format version " + version);
+			ByteBuffer trailer = BlockIndex.readFully(channel, end - TRAILER_SIZE, TRAILER_SIZE);
+			int count = trailer.getInt();
+			long position = trailer.getLong();
+			if (trailer.getInt() != DIRECTORY_MAGIC || count < 0 || position < HEADER_SIZE
+					|| end - TRAILER_SIZE - position > Integer.MAX_VALUE || position > end - TRAILER_SIZE)
+				throw new IOException("Archive has no central directory");
+
+			ByteBuffer directory = BlockIndex.readFully(channel, position, (int) (end - TRAILER_SIZE - position));
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(directory.array(), 0, directory.limit()));
+			ArrayList<Member> members = new ArrayList<Member>();
+			for (int i = 0; i < count; i++)
+			{
+				Member member = new Member(in.readUTF(), in.readLong(), in.readLong(), in.readLong(), in.readInt(), false);
+				int method = (version < 2) ? METHOD_FRAMES : in.readUnsignedByte();
+				if (method != METHOD_FRAMES && method != METHOD_STORED)
+					throw new IOException("Corrupt central directory");
+				member.stored = (method == METHOD_STORED);
+				if (member.position < HEADER_SIZE || member.size < 0 || member.position + member.length > position
+						|| (member.stored ? member.length != member.size : member.length < 4))
+					throw new IOException("Corrupt central directory");
+				members.add(member);
+			}
+			return members;
+		}
+		finally
+		{
+			channel.close();
+		}
+	}
+
+	/**
+	 * Finds a member by name
+	 * @param members - the central directory
+	 * @param name - the name of the member
+	 * @return the member
+	 * @throws IOException - there is no member with that name
+	 */
+	public static Member find(ArrayList<Member> members, String name) throws IOException
+	{
+		for (Member member : members)
+			if (member.name.equals(name))
+				return member;
+		throw new IOException("No member \"" + name + "\" in the archive");
+	}
+
+	/**
+	 * Decompresses one member, reading only its own data
+	 * @param archiveFile - the archive
+	 * @param member - the member, from the central directory
+	 * @param out - receives the original bytes
+	 * @return the number of bytes held in buffers while decompressing
+	 * @throws IOException - file IO error, or the member is corrupt
+	 */
+	public static long extract(File archiveFile, Member member, OutputStream out) throws IOException
+	{
+		FileInputStream file = new FileInputStream(archiveFile);
+		try
+		{
+			file.getChannel().position(member.position);
+			DataInputStream in = new DataInputStream(new BufferedInputStream(file, BUFFER_SIZE));
+			CheckedOutputStream checked = new CheckedOutputStream(out, new CRC32());
+			long buffers = BUFFER_SIZE;
+			if (member.stored)
+				buffers += copy(in, checked, member.length);
+			else
+				buffers += decompressFrames(in, member, checked);
+			checked.flush();
+			if ((int) checked.getChecksum().getValue() != member.crc)
+				throw new IOException("Member \"" + member.name + "\" fails its CRC check");
+			return buffers;
+		}
+		finally
+		{
+			file.close();
+		}
+	}
+
+	/**
+	 * Decompresses the frames of a member
+	 * @param in - the archive, at the first frame of the member
+	 * @param member - the member, from the central directory
+	 * @param out - receives the original bytes
+	 * @return the number of bytes held in buffers while decompressing
+	 * @throws IOException - file IO error, or the member is corrupt
+	 */
+	private static long decompressFrames(DataInputStream in, Member member, OutputStream out) throws IOException
+	{
+		long read = 0;
+		byte[] frame = new byte[0];
+		int length = in.readInt();
+		while (length > 0)
+		{
+			read += 4 + length;
+			if (read >= member.length)
+				throw new IOException("Member \"" + member.name + "\" runs past its end");
+			if (frame.length < length)
+				frame = new byte[length];
+			in.readFully(frame, 0, length);
+			BlockCompressor.decompressBlock(frame, 0, length, out);
+			length = in.readInt();
+		}
+		if (length < 0 || read + 4 != member.length)
+			throw new IOException("Member \"" + member.name + "\" is corrupt");
+		return frame.length + Proj3.BUFFER_SIZE;
+	}
+
+	/**
+	 * Copies bytes from one stream to another
+	 * @param in - the stream to copy from
+	 * @param out - the stream to copy to
+	 * @param length - the number of bytes to copy
+	 * @return the size of the buffer the bytes were copied through
+	 * @throws IOException - file IO error, or in ends too soon
+	 */
+	private static int copy(InputStream in, OutputStream out, long length) throws IOException
+	{
+		byte[] buffer = new byte[(int) Math.min(length, BUFFER_SIZE)];
+		while (length > 0)
+		{
+			int n = in.read(buffer, 0, (int) Math.min(length, buffer.length));
+			if (n == -1)
+				throw new IOException("Archive ends in the middle of a member");
+			out.write(buffer, 0, n);
+			length -= n;
+		}
+		return buffer.length;
+	}
+
+	/**
+	 * Decompresses members into a directory concurrently, recreating their paths
+	 * @param archiveFile - the archive
+	 * @param members - the members to extract
+	 * @param dir - the directory to extract into
+	 * @throws IOException - file IO error, or a member is corrupt or has an unsafe name
+	 */
+	public void extractAll(File archiveFile, ArrayList<Member> members, File dir) throws IOException
+	{
+		ArrayList<ForkJoinTask<Long>> tasks = new ArrayList<ForkJoinTask<Long>>();
+		for (Member member : members)
+			tasks.add(pool.submit(new ExtractTask(archiveFile, member, outputFile(dir, member.name))));
+		long largest = 0;
+		for (ForkJoinTask<Long> task : tasks)
+			largest = Math.max(largest, BlockCompressor.join(task));
+		memoryUse = largest * Math.min(pool.getParallelism(), members.size());
+	}
+
+	/**
+	 * Estimates the memory held in buffers by the last call to create or
+	 * extractAll: the largest buffers any one member needed, for as many
+	 * members as could be in flight at once
+	 * @return the number of bytes
+	 */
+	public long getMemoryUse()
+	{
+		return memoryUse;
+	}
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * Finds the file a member is extracted to, refusing names that would leave the directory
+	 * @param dir - the directory to extract into
+	 * @param name - the name of the member
+	 * @return the file
+	 * @throws IOException - the name is absolute or climbs out of the directory
+	 */
+	private static File outputFile(File dir, String name) throws IOException
+	{
+		if (name.isEmpty() || name.startsWith("/") || Arrays.asList(name.split("/")).contains(".."))
+			throw new IOException("Refusing to extract member \"" + name + "\"");
+		return new File(dir, name.replace('/', File.separatorChar));
+	}
+
+	/**
+	 * Recursively adds the files below a directory, in order of name
+	 * @param dir - the directory
+	 * @param prefix - the path of the directory within the archive, ending in / unless empty
+	 * @param files - receives the files
+	 * @param names - receives the name of each file
+	 * @throws IOException - the directory cannot be read
+	 */
+	private static void addFiles(File dir, String prefix, ArrayList<File> files, ArrayList<String> names) throws IOException
+	{
+		File[] entries = dir.listFiles();
+		if (null == entries)
+			throw new IOException("Cannot read directory " + dir);
+		Arrays.sort(entries);
+		for (File entry : entries)
+		{
+			if (entry.isDirectory())
+				addFiles(entry, prefix + entry.getName() + "/", files, names);
+			else if (entry.isFile())
+			{
+				files.add(entry);
+				names.add(prefix + entry.getName());
+			}
+		}
+	}
+
+	/**
+	 * Turns a file name from a list into a member name: / between directories,
+	 * with no root, drive or leading ./
+	 * @param path - the file name
+	 * @return the member name
+	 */
+	private static String memberName(String path)
+	{
+		String name = path.replace(File.separatorChar, '/');
+		if (name.length() > 1 && name.charAt(1) == ':')
+			name = name.substring(2);
+		while (name.startsWith("/") || name.startsWith("./"))
+			name = name.substring(name.startsWith("/") ? 1 : 2);
+		return name;
+	}
+
+	/**
+	 * Writes a compressed member and adds it to the central directory
+	 * @param out - the archive
+	 * @param member - the compressed member
+	 * @param members - the central directory
+	 * @param position - the position in the archive
+	 * @return the position after the member
+	 * @throws IOException - file IO error
+	 */
+	private static long writeMember(DataOutputStream out, CompressedMember member, ArrayList<Member> members, long position) throws IOException
+	{
+		member.frames.writeTo(out);
+		members.add(new Member(member.name, position, member.frames.size(), member.size, member.crc, member.stored));
+		return position + member.frames.size();
+	}
+
+	/**
+	 * A member compressed in memory, waiting to be written
+	 */
+	private static class CompressedMember
+	{
+		private String name;
+		private ByteArrayOutputStream frames;
+		private long size;
+		private int crc;
+		private boolean stored;
+		private long buffers;
+	}
+
+	/**
+	 * Task which reads and compresses one file
+	 */
+	private static class MemberTask extends RecursiveTask<CompressedMember>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private File file;
+		private String name;
+		private int maxLength;
+		private CodeCache cache;
+
+		public MemberTask(File file, String name, int maxLength, CodeCache cache)
+		{
+			this.file = file;
+			this.name = name;
+			this.maxLength = maxLength;
+			this.cache = cache;
+		}
+
+		protected CompressedMember compute()
+		{
+			try
+			{
+				CompressedMember member = new CompressedMember();
+				member.name = name;
+				member.frames = new ByteArrayOutputStream((int) Math.min(file.length() / 2 + 64, 1 << 20));
+				DataOutputStream out = new DataOutputStream(member.frames);
+				CRC32 crc = new CRC32();
+				byte[] block = new byte[(int) Math.min(file.length() + 1, BlockCompressor.DEFAULT_BLOCK_SIZE)];
+				InputStream in = new FileInputStream(file);
+				try
+				{
+					int n = BlockCompressor.readBlock(in, block);
+					while (n > 0)
+					{
+						crc.update(block, 0, n);
+						member.size += n;
+						byte[] frame = BlockCompressor.compressBlock(block, n, maxLength, cache);
+						out.writeInt(frame.length);
+						out.write(frame);
+						n = BlockCompressor.readBlock(in, block);
+					}
+				}
+				finally
+				{
+					in.close();
+				}
+				out.writeInt(0);
+				member.crc = (int) crc.getValue();
+				if (member.frames.size() >= member.size)
+					store(member);
+				member.buffers = block.length + member.frames.size() + BitOutput.BUFFER_SIZE;
+				return member;
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(new IOException(file + ": " + e.getMessage(), e));
+			}
+		}
+
+		/**
+		 * Replaces the frames of a member with the bytes of the file as they are
+		 * @param member - the compressed member
+		 * @throws IOException - file IO error, or the file changed since it was compressed
+		 */
+		private void store(CompressedMember member) throws IOException
+		{
+			member.frames.reset();
+			member.stored = true;
+			CRC32 crc = new CRC32();
+			InputStream in = new FileInputStream(file);
+			try
+			{
+				byte[] buffer = new byte[(int) Math.min(member.size + 1, BUFFER_SIZE)];
+				int n = in.read(buffer);
+				while (n != -1)
+				{
+					crc.update(buffer, 0, n);
+					member.frames.write(buffer, 0, n);
+					n = in.read(buffer);
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+			if (member.frames.size() != member.size || (int) crc.getValue() != member.crc)
+				throw new IOException("File changed while it was being archived");
+		}
+	}
+
+	/**
+	 * Task which extracts one member to a file
+	 */
+	private static class ExtractTask extends RecursiveTask<Long>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private File archiveFile;
+		private Member member;
+		private File file;
+
+		public ExtractTask(File archiveFile, Member member, File file)
+		{
+			this.archiveFile = archiveFile;
+			this.member = member;
+			this.file = file;
+		}
+
+		protected Long compute()
+		{
+			try
+			{
+				File parent = file.getParentFile();
+				if (null != parent)
+					parent.mkdirs();
+				OutputStream out = new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE);
+				try
+				{
+					return BUFFER_SIZE + extract(archiveFile, member, out);
+				}
+				finally
+				{
+					out.close();
+				}
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package proj3;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads a stream of bytes as a stream of bits, most significant bit first.
+ * Bits are buffered in a 64 bit accumulator so that up to 32 bits can be
+ * looked at before they are consumed. The bytes come either from a stream,
+ * through a fixed size buffer, or straight from an array or from windows of
+ * a mapped file.
+ */
+public class BitInput {
+
+	/**
+	 * Size of the byte buffer used to read from the underlying stream
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The stream that bytes are read from, or null for a mapped file
+	 */
+	private InputStream in;
+	/**
+	 * The mapped file that bytes are read from, or null for a stream
+	 */
+	private MappedWindows windows;
+	/**
+	 * Bytes not yet moved into the accumulator
+	 */
+	private ByteBuffer window;
+	/**
+	 * Bit accumulator; the next bit to be read is at position count - 1
+	 */
+	private long bits;
+	/**
+	 * Number of valid bits in the accumulator
+	 */
+	private int count;
+	/**
+	 * True once there are no more bytes
+	 */
+	private boolean eof;
+
+	/**
+	 * Constructor which reads bits from a stream
+	 * @param in - the stream of encoded bytes
+	 */
+	public BitInput(InputStream in)
+	{
+		this.in = in;
+		this.window = ByteBuffer.allocate(BUFFER_SIZE);
+		this.window.limit(0);
+	}
+
+	/**
+	 * Constructor which reads bits straight from part of an array, without copying it
+	 * @param buffer - the array holding the encoded bytes
+	 * @param off - the position of the first encoded byte
+	 * @param len - the number of encoded bytes
+	 */
+	public BitInput(byte[] buffer, int off, int len)
+	{
+		this.window = ByteBuffer.wrap(buffer, off, len);
+		this.eof = true;
+	}
+
+	/**
+	 * Constructor which reads bits from a mapped file
+	 * @param windows - the mapped region holding the encoded bytes
+	 */
+	public BitInput(MappedWindows windows)
+	{
+		this.windows = windows;
+		this.window = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Looks at the next n bits without consuming them. Bits past the end of
+	 * the stream are read as zeros.
+	 * @param n - the number of bits to look at, from 1 to 32
+	 * @return the next n bits, right aligned
+	 * @throws IOException - file IO error
+	 */
+	public int peek(int n) throws IOException
+	{
+		if (count < n)
+			refill();
+		if (count < n) //End of stream; pad with zeros
+			return (int) ((bits << (n - count)) & ((1L << n) - 1));
+		return (int) ((bits >>> (count - n)) & ((1L << n) - 1));
+	}
+
+	/**
+	 * Consumes n bits which have already been looked at with peek
+	 * @param n - the number of bits to consume
+	 * @return false if fewer than n bits were left in the stream
+	 */
+	public boolean consume(int n)
+	{
+		if (count < n)
+		{
+			count = 0;
+			return false;
+		}
+		count -= n;
+		return true;
+	}
+
+	/**
+	 * Closes the underlying stream
+	 * @throws IOException - file IO error
+	 */
+	public void close() throws IOException
+	{
+		if (null != in)
+			in.close();
+	}
+
+	/**
+	 * Moves whole bytes into the accumulator until it holds more than 56 bits
+	 * or the input runs out
+	 * @throws IOException - file IO error
+	 */
+	private void refill() throws IOException
+	{
+		while (count <= 56)
+		{
+			if (!window.hasRemaining() && !nextWindow())
+				return;
+			bits = (bits << 8) | (window.get() & 0xFF);
+			count += 8;
+		}
+	}
+
+	/**
+	 * Refills the buffer from the stream, or maps the next window of the file
+	 * @return false if there are no more bytes
+	 * @throws IOException - file IO error
+	 */
+	private boolean nextWindow() throws IOException
+	{
+		if (eof)
+			return false;
+		if (null != windows)
+		{
+			ByteBuffer next = windows.next();
+			if (null == next)
+			{
+				eof = true;
+				return false;
+			}
+			window = next;
+			return window.hasRemaining() || nextWindow();
+		}
+
+		int n = in.read(window.array(), 0, window.capacity());
+		if (n <= 0)
+		{
+			eof = (n < 0);
+			window.limit(0);
+			return n == 0 && nextWindow();
+		}
+		window.position(0);
+		window.limit(n);
+		return true;
+	}
+}
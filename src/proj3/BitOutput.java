@@ -0,0 +1,199 @@
+package proj3;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes a stream of bits to a stream of bytes, most significant bit first.
+ * Codes are packed into a 64 bit accumulator and whole words are moved into
+ * a fixed size byte buffer, so memory use does not grow with the input. The
+ * words can also be written straight into windows of a mapped file.
+ */
+public class BitOutput {
+
+	/**
+	 * Size of the byte buffer written to the underlying stream
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The stream that bytes are written to, or null for a mapped file
+	 */
+	private OutputStream out;
+	/**
+	 * The mapped file that bytes are written to, or null for a stream
+	 */
+	private MappedWindows windows;
+	/**
+	 * Whole words waiting to be written to the stream, or the current window of the file
+	 */
+	private ByteBuffer window;
+	/**
+	 * Bit accumulator; bits are filled in from the most significant end
+	 */
+	private long bits;
+	/**
+	 * Number of bits in the accumulator
+	 */
+	private int count;
+	/**
+	 * Total number of bits written
+	 */
+	private long written;
+
+	/**
+	 * Constructor which writes bits to a stream
+	 * @param out - the stream that receives the encoded bytes
+	 */
+	public BitOutput(OutputStream out)
+	{
+		this.out = out;
+		this.window = ByteBuffer.allocate(BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructor which writes bits into a mapped file. The region must be
+	 * exactly as long as the bits written, rounded up to a whole byte.
+	 * @param windows - the mapped region that receives the encoded bytes
+	 */
+	public BitOutput(MappedWindows windows)
+	{
+		this.windows = windows;
+		this.window = ByteBuffer.allocate(0);
+	}
+
+	/**
+	 * Appends a code to the bit stream
+	 * @param code - the code, right aligned, with no bits set above len
+	 * @param len - the number of bits in the code, from 0 to 64
+	 * @throws IOException - file IO error
+	 */
+	public void writeBits(long code, int len) throws IOException
+	{
+		written += len;
+		int free = 64 - count;
+		if (len < free)
+		{
+			if (len > 0)
+				bits |= code << (free - len);
+			count += len;
+			return;
+		}
+
+		//Fill up the accumulator, write it out and keep the leftover bits
+		int rest = len - free;
+		bits |= code >>> rest;
+		putWord(bits);
+		bits = (rest == 0) ? 0 : code << (64 - rest);
+		count = rest;
+	}
+
+	/**
+	 * Gets the number of bits written so far
+	 * @return the number of bits written
+	 */
+	public long getBitCount()
+	{
+		return written;
+	}
+
+	/**
+	 * Writes every whole byte held so far to the underlying stream and flushes
+	 * it, keeping the bits of a partial byte for the next code, so that a
+	 * stream read as it arrives can decode everything coded up to now
+	 * @throws IOException - file IO error
+	 */
+	public void flushWholeBytes() throws IOException
+	{
+		while (count >= 8)
+		{
+			putByte((byte) (bits >>> 56));
+			bits <<= 8;
+			count -= 8;
+		}
+		if (null != out)
+		{
+			drain();
+			out.flush();
+		}
+	}
+
+	/**
+	 * Pads the last partial byte with zeros and writes everything buffered
+	 * to the underlying stream
+	 * @throws IOException - file IO error
+	 */
+	public void flush() throws IOException
+	{
+		while (count > 0)
+		{
+			putByte((byte) (bits >>> 56));
+			bits <<= 8;
+			count = Math.max(0, count - 8);
+		}
+		bits = 0;
+		if (null != out)
+		{
+			drain();
+			out.flush();
+		}
+	}
+
+	/**
+	 * Flushes the bits and closes the underlying stream
+	 * @throws IOException - file IO error
+	 */
+	public void close() throws IOException
+	{
+		flush();
+		if (null != out)
+			out.close();
+	}
+
+	/**
+	 * Moves a full accumulator into the byte buffer
+	 * @param word - the 64 bits to be written
+	 * @throws IOException - file IO error
+	 */
+	private void putWord(long word) throws IOException
+	{
+		if (window.remaining() >= 8)
+			window.putLong(word);
+		else
+			for (int shift = 56; shift >= 0; shift -= 8)
+				putByte((byte) (word >>> shift));
+	}
+
+	/**
+	 * Moves one byte into the byte buffer
+	 * @param b - the byte to be written
+	 * @throws IOException - file IO error
+	 */
+	private void putByte(byte b) throws IOException
+	{
+		if (!window.hasRemaining())
+			drain();
+		window.put(b);
+	}
+
+	/**
+	 * Writes the byte buffer to the underlying stream, or maps the next window
+	 * of the file
+	 * @throws IOException - file IO error, or the mapped region is too short
+	 */
+	private void drain() throws IOException
+	{
+		if (null != windows)
+		{
+			if (window.hasRemaining())
+				return;
+			window = windows.next();
+			if (null == window)
+				throw new IOException("Mapped output region is too short");
+			return;
+		}
+		out.write(window.array(), 0, window.position());
+		window.clear();
+	}
+}
@@ -0,0 +1,581 @@
+package proj3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Compresses a stream as independent blocks of bytes, each with its own
+ * Huffman code, on a pool of worker threads.
+ *
+ * Layout, big-endian:
+ *   int    magic number "HUFB"
+ *   byte   format version
+ *   int    block size
+ *   then for each block, in order:
+ *   int    length of the frame
+ *   frame  the block compressed in the byte alphabet, header included
+ *   and finally:
+ *   int    0
+ *   the BlockIndex footer (version 2 and up)
+ *
+ * The index lets whole files be decompressed in parallel, and lets a range
+ * of the original file be decompressed without touching the other blocks.
+ */
+public class BlockCompressor {
+
+	/**
+	 * Magic number identifying a file of compressed blocks
+	 */
+	public static final int MAGIC = 0x48554642;
+	/**
+	 * Current format version
+	 */
+	public static final int VERSION = 2;
+	/**
+	 * Number of bytes before the first frame
+	 */
+	static final int HEADER_SIZE = 9;
+	/**
+	 * Default number of bytes in a block
+	 */
+	public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+	/**
+	 * Smallest block size a memory budget can shrink blocks to
+	 */
+	public static final int MIN_BLOCK_SIZE = 1 << 12;
+
+	/**
+	 * The worker threads
+	 */
+	private ForkJoinPool pool;
+	/**
+	 * Number of bytes in a block
+	 */
+	private int blockSize;
+	/**
+	 * Largest number of blocks being compressed or waiting to be written at once
+	 */
+	private int window;
+	/**
+	 * Longest code length allowed in a block's code
+	 */
+	private int maxCodeLength = CanonicalCode.MAX_CODE_LENGTH;
+	/**
+	 * Cache of codes shared by the blocks, or null
+	 */
+	private CodeCache cache;
+
+	/**
+	 * Constructor which initializes the data members
+	 * @param threads - the number of worker threads
+	 * @param blockSize - the number of bytes in a block
+	 */
+	public BlockCompressor(int threads, int blockSize)
+	{
+		if (threads < 1 || blockSize < 1)
+			throw new IllegalArgumentException("threads and block size must be positive");
+		this.pool = new ForkJoinPool(threads);
+		this.blockSize = blockSize;
+		this.window = 2 * threads;
+	}
+
+	/**
+	 * Constructor for decompressing, where the block size is read from the file
+	 * @param threads - the number of worker threads
+	 */
+	public BlockCompressor(int threads)
+	{
+		this(threads, DEFAULT_BLOCK_SIZE);
+	}
+
+	/**
+	 * Limits the memory used for blocks while compressing. Each block in flight
+	 * holds its input, its compressed frame and a BitOutput buffer, and one more
+	 * block is being filled from the input. Fewer blocks are kept in flight, and
+	 * if need be smaller blocks are used, but blocks never shrink below
+	 * MIN_BLOCK_SIZE, so a very small budget can still be exceeded. Short-lived
+	 * copies made while a frame is finished are not counted.
+	 * @param bytes - the number of bytes that blocks may take up
+	 */
+	public void setMemoryBudget(long bytes)
+	{
+		if (bytes < 3L * blockSize + BitOutput.BUFFER_SIZE)
+			blockSize = (int) Math.max(MIN_BLOCK_SIZE, (bytes - BitOutput.BUFFER_SIZE) / 3);
+		long perBlock = 2L * blockSize + BitOutput.BUFFER_SIZE;
+		window = (int) Math.max(1, Math.min(2 * pool.getParallelism(), (bytes - blockSize) / perBlock));
+	}
+
+	/**
+	 * Limits the length of the codes of every block
+	 * @param maxLength - the longest code length allowed
+	 */
+	public void setMaxCodeLength(int maxLength)
+	{
+		if (maxLength < 1 || maxLength > CanonicalCode.MAX_CODE_LENGTH)
+			throw new IllegalArgumentException("Bad maximum code length " + maxLength);
+		maxCodeLength = maxLength;
+	}
+
+	/**
+	 * Lets blocks with similar contents share codes
+	 * @param cache - the cache of codes, or null to build a code for every block
+	 */
+	public void setCodeCache(CodeCache cache)
+	{
+		this.cache = cache;
+	}
+
+	/**
+	 * Estimates the memory held by blocks while compressing: each block in
+	 * flight holds its input, its compressed frame and a BitOutput buffer, and
+	 * one more block is being filled
+	 * @return the number of bytes
+	 */
+	public long getMemoryUse()
+	{
+		return window * (2L * blockSize + BitOutput.BUFFER_SIZE) + blockSize;
+	}
+
+	/**
+	 * Gets the number of bytes in a block
+	 * @return the block size
+	 */
+	public int getBlockSize()
+	{
+		return blockSize;
+	}
+
+	/**
+	 * Compresses a stream in a single pass. Blocks are compressed concurrently,
+	 * but no more than two per thread (or the memory budget) are held in memory,
+	 * and frames are written in input order.
+	 * @param in - the data to be compressed
+	 * @param out - receives the compressed blocks
+	 * @throws IOException - file IO error
+	 */
+	public void compress(InputStream in, OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeInt(blockSize);
+
+		ArrayDeque<BlockTask> pending = new ArrayDeque<BlockTask>();
+		BlockIndex index = new BlockIndex();
+		long position = HEADER_SIZE;
+
+		byte[] block = new byte[blockSize];
+		int n = readBlock(in, block);
+		while (n > 0)
+		{
+			BlockTask task = new BlockTask(block, n, maxCodeLength, cache);
+			pool.execute(task);
+			pending.add(task);
+			if (pending.size() >= window)
+				position = writeFrame(data, pending.remove(), index, position);
+
+			block = new byte[blockSize];
+			n = readBlock(in, block);
+		}
+		while (!pending.isEmpty())
+			position = writeFrame(data, pending.remove(), index, position);
+
+		data.writeInt(0);
+		index.write(data, position + 4);
+		data.flush();
+	}
+
+	/**
+	 * Decompresses a stream written by compress
+	 * @param in - the compressed blocks
+	 * @param out - receives the original data
+	 * @throws IOException - file IO error, or the data is not a file of compressed blocks
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a file of compressed blocks");
+		int version = data.readUnsignedByte();
+		if (version < 1 || version > VERSION)
+			throw new IOException("Unsupported format version " + version);
+		data.readInt(); //block size
+
+		int length = data.readInt();
+		while (length > 0)
+		{
+			byte[] frame = new byte[length];
+			data.readFully(frame);
+			decompressBlock(frame, 0, length, out);
+			length = data.readInt();
+		}
+		if (length < 0)
+			throw new IOException("Corrupt frame length " + length);
+		out.flush();
+	}
+
+	/**
+	 * Decompresses a whole file written by compress, decoding blocks in parallel
+	 * and writing each one straight to its place in the output file. Files from
+	 * before the index was added are decompressed one block after another.
+	 * @param compressedFile - the compressed blocks
+	 * @param outputFile - receives the original data
+	 * @throws IOException - file IO error, or the file is corrupt
+	 */
+	public void decompress(File compressedFile, File outputFile) throws IOException
+	{
+		if (readVersion(compressedFile) < 2)
+		{
+			InputStream in = new BufferedInputStream(new FileInputStream(compressedFile));
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile));
+			try
+			{
+				decompress(in, out);
+			}
+			finally
+			{
+				in.close();
+				out.close();
+			}
+			return;
+		}
+		
+		FileChannel in = FileChannel.open(compressedFile.toPath(), StandardOpenOption.READ);
+		FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try
+		{
+			BlockIndex index = BlockIndex.read(in);
+			ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			for (int i = 0; i < index.size(); i++)
+				tasks.add(pool.submit(new ExtractTask(in, index, i, 0, index.getSize(i), out, index.getStart(i))));
+			for (ForkJoinTask<?> task : tasks)
+				join(task);
+		}
+		finally
+		{
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Decompresses only part of the original file, decoding just the blocks that overlap it
+	 * @param compressedFile - the compressed blocks
+	 * @param start - the position in the original file of the first byte wanted
+	 * @param length - the number of bytes wanted
+	 * @param outputFile - receives the requested bytes
+	 * @return the number of compressed bytes read for the blocks that overlap the range
+	 * @throws IOException - file IO error, the file is corrupt or has no index,
+	 *                       or the range is outside the original file
+	 */
+	public long decompressRange(File compressedFile, long start, long length, File outputFile) throws IOException
+	{
+		FileChannel in = FileChannel.open(compressedFile.toPath(), StandardOpenOption.READ);
+		FileChannel out = FileChannel.open(outputFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try
+		{
+			BlockIndex index = BlockIndex.read(in);
+			long end = start + length;
+			if (start < 0 || length < 0 || end > index.getTotalSize())
+				throw new IOException("Range " + start + "+" + length + " is outside the original "
+						+ index.getTotalSize() + " bytes");
+			if (length == 0)
+				return 0;
+
+			ArrayList<ForkJoinTask<?>> tasks = new ArrayList<ForkJoinTask<?>>();
+			long read = 0;
+			for (int i = index.findBlock(start); i < index.size() && index.getStart(i) < end; i++)
+			{
+				read += index.getFrameLength(i);
+				//The part of block i inside the range
+				long from = Math.max(start, index.getStart(i));
+				long to = Math.min(end, index.getStart(i) + index.getSize(i));
+				int offset = (int) (from - index.getStart(i));
+				tasks.add(pool.submit(new ExtractTask(in, index, i, offset, (int) (to - from), out, from - start)));
+			}
+			for (ForkJoinTask<?> task : tasks)
+				join(task);
+			return read;
+		}
+		finally
+		{
+			in.close();
+			out.close();
+		}
+	}
+
+	/**
+	 * Compresses one block, building its code straight from the counts the
+	 * same way as a whole file
+	 * @param block - the data
+	 * @param len - the number of bytes of block to compress
+	 * @return the compressed frame
+	 */
+	public static byte[] compressBlock(byte[] block, int len)
+	{
+		return compressBlock(block, len, CanonicalCode.MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * Compresses one block with codes no longer than a limit
+	 * @param block - the data
+	 * @param len - the number of bytes of block to compress
+	 * @param maxLength - the longest code length allowed
+	 * @return the compressed frame
+	 */
+	public static byte[] compressBlock(byte[] block, int len, int maxLength)
+	{
+		return compressBlock(block, len, maxLength, null);
+	}
+
+	/**
+	 * Compresses one block with codes no longer than a limit, taking the code
+	 * from a cache if a cached code suits the block
+	 * @param block - the data
+	 * @param len - the number of bytes of block to compress
+	 * @param maxLength - the longest code length allowed
+	 * @param cache - the cache of codes, or null
+	 * @return the compressed frame
+	 */
+	public static byte[] compressBlock(byte[] block, int len, int maxLength, CodeCache cache)
+	{
+		long[] counts = new long[Proj3.EOF_SYMBOL + 1];
+		for (int i = 0; i < len; i++)
+			counts[block[i] & 0xFF]++;
+		counts[Proj3.EOF_SYMBOL] = 1;
+
+		CanonicalCode code = (null == cache) ? Proj3.createCanonicalCode(counts, maxLength) : cache.codeFor(counts, maxLength);
+		long[] bits = code.getCodeTable(Proj3.EOF_SYMBOL + 1);
+		int[] lengths = code.getLengthTable(Proj3.EOF_SYMBOL + 1);
+
+		try
+		{
+			ByteArrayOutputStream frame = new ByteArrayOutputStream(len / 2 + 1024);
+			new FileHeader(FileHeader.ALPHABET_BYTES, len, code).write(new DataOutputStream(frame));
+			BitOutput output = new BitOutput(frame);
+			for (int i = 0; i < len; i++)
+			{
+				int key = block[i] & 0xFF;
+				output.writeBits(bits[key], lengths[key]);
+			}
+			output.writeBits(bits[Proj3.EOF_SYMBOL], lengths[Proj3.EOF_SYMBOL]);
+			output.flush();
+			return frame.toByteArray();
+		}
+		catch (IOException e) //not thrown by an in-memory stream
+		{
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Decompresses one frame
+	 * @param frame - the buffer holding the frame
+	 * @param off - the start of the frame
+	 * @param len - the length of the frame
+	 * @param out - receives the original data
+	 * @throws IOException - file IO error, or the frame is corrupt
+	 */
+	public static void decompressBlock(byte[] frame, int off, int len, OutputStream out) throws IOException
+	{
+		ByteArrayInputStream in = new ByteArrayInputStream(frame, off, len);
+		FileHeader header = readFrameHeader(in);
+		Proj3.decodeBytes(header, new BitInput(frame, off + len - in.available(), in.available()), out);
+	}
+
+	/**
+	 * Reads the header at the start of a frame
+	 * @param in - the frame
+	 * @return the header, with in left at the coded bits
+	 * @throws IOException - the frame does not start with a header in the byte alphabet
+	 */
+	static FileHeader readFrameHeader(ByteArrayInputStream in) throws IOException
+	{
+		FileHeader header = FileHeader.read(new DataInputStream(in));
+		if (header.getAlphabet() != FileHeader.ALPHABET_BYTES)
+			throw new IOException("Block is not in the byte alphabet");
+		return header;
+	}
+
+	/**
+	 * Stops the worker threads
+	 */
+	public void shutdown()
+	{
+		pool.shutdown();
+	}
+
+	/**
+	 * Reads the format version of a file of compressed blocks
+	 * @param compressedFile - the compressed blocks
+	 * @return the format version
+	 * @throws IOException - file IO error, or the file is not a file of compressed blocks
+	 */
+	private static int readVersion(File compressedFile) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new FileInputStream(compressedFile));
+		try
+		{
+			if (in.readInt() != MAGIC)
+				throw new IOException("Not a file of compressed blocks");
+			return in.readUnsignedByte();
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads until the block is full or the stream ends
+	 * @param in - the data
+	 * @param block - the buffer to fill
+	 * @return the number of bytes read, 0 at the end of the stream
+	 * @throws IOException - file IO error
+	 */
+	static int readBlock(InputStream in, byte[] block) throws IOException
+	{
+		int n = 0;
+		while (n < block.length)
+		{
+			int r = in.read(block, n, block.length - n);
+			if (r == -1)
+				break;
+			n += r;
+		}
+		return n;
+	}
+
+	/**
+	 * Waits for a block to be compressed and writes it as a length-prefixed frame
+	 * @param out - the compressed stream
+	 * @param task - the task compressing the block
+	 * @param index - records where the frame was written
+	 * @param position - the position of out in the compressed file
+	 * @return the position of out after the frame
+	 * @throws IOException - file IO error
+	 */
+	private static long writeFrame(DataOutputStream out, BlockTask task, BlockIndex index, long position) throws IOException
+	{
+		byte[] frame = join(task);
+		out.writeInt(frame.length);
+		index.add(position + 4, frame.length, task.len);
+		out.write(frame);
+		return position + 4 + frame.length;
+	}
+
+	/**
+	 * Waits for a task, passing on any IO error it had
+	 * @param task - the task
+	 * @return the result of the task
+	 * @throws IOException - file IO error in the task
+	 */
+	static <T> T join(ForkJoinTask<T> task) throws IOException
+	{
+		try
+		{
+			return task.join();
+		}
+		catch (UncheckedIOException e)
+		{
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Task which compresses one block
+	 */
+	private static class BlockTask extends RecursiveTask<byte[]>
+	{
+		private static final long serialVersionUID = 1L;
+
+		private byte[] block;
+		private int len;
+		private int maxLength;
+		private CodeCache cache;
+
+		public BlockTask(byte[] block, int len, int maxLength, CodeCache cache)
+		{
+			this.block = block;
+			this.len = len;
+			this.maxLength = maxLength;
+			this.cache = cache;
+		}
+
+		protected byte[] compute()
+		{
+			return compressBlock(block, len, maxLength, cache);
+		}
+	}
+
+	/**
+	 * Task which decompresses one block and writes part of it at a given
+	 * position of the output file
+	 */
+	private static class ExtractTask extends RecursiveAction
+	{
+		private static final long serialVersionUID = 1L;
+
+		private FileChannel in;
+		private BlockIndex index;
+		private int block;
+		private int offset;
+		private int length;
+		private FileChannel out;
+		private long position;
+
+		public ExtractTask(FileChannel in, BlockIndex index, int block, int offset, int length, FileChannel out, long position)
+		{
+			this.in = in;
+			this.index = index;
+			this.block = block;
+			this.offset = offset;
+			this.length = length;
+			this.out = out;
+			this.position = position;
+		}
+
+		protected void compute()
+		{
+			try
+			{
+				ByteBuffer frame = BlockIndex.readFully(in, index.getFramePosition(block), index.getFrameLength(block));
+				ByteArrayOutputStream data = new ByteArrayOutputStream(index.getSize(block));
+				decompressBlock(frame.array(), 0, frame.limit(), data);
+				if (data.size() != index.getSize(block))
+					throw new IOException("Block " + block + " does not match the index");
+
+				ByteBuffer part = ByteBuffer.wrap(data.toByteArray(), offset, length);
+				long at = position;
+				while (part.hasRemaining())
+					at += out.write(part, at);
+			}
+			catch (IOException e)
+			{
+				throw new UncheckedIOException(e);
+			}
+		}
+	}
+}
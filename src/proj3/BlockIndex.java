@@ -0,0 +1,234 @@
+package proj3;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * Index of the blocks in a file of compressed blocks, written as a footer
+ * so that blocks can be found without reading the ones before them.
+ *
+ * Layout, big-endian, at the end of the file:
+ *   for each block, in order:
+ *   long   position of the frame in the compressed file
+ *   int    length of the frame
+ *   int    number of bytes the block decompresses to
+ *   and finally:
+ *   int    number of blocks
+ *   long   position of the first index entry
+ *   int    magic number "HUFI"
+ */
+public class BlockIndex {
+
+	/**
+	 * Magic number ending a file that has an index
+	 */
+	public static final int MAGIC = 0x48554649;
+	/**
+	 * Number of bytes after the last index entry
+	 */
+	public static final int TRAILER_SIZE = 16;
+	/**
+	 * Number of bytes in an index entry
+	 */
+	private static final int ENTRY_SIZE = 16;
+
+	/**
+	 * Position of each frame in the compressed file
+	 */
+	private long[] framePositions;
+	/**
+	 * Length of each frame
+	 */
+	private int[] frameLengths;
+	/**
+	 * Position of each block in the original file, plus the total length at the end
+	 */
+	private long[] starts;
+	/**
+	 * Number of blocks in the index
+	 */
+	private int count;
+
+	/**
+	 * Constructor for an empty index
+	 */
+	public BlockIndex()
+	{
+		framePositions = new long[16];
+		frameLengths = new int[16];
+		starts = new long[17];
+	}
+
+	/**
+	 * Adds the next block to the index
+	 * @param framePosition - the position of the frame in the compressed file
+	 * @param frameLength - the length of the frame
+	 * @param size - the number of bytes the block decompresses to
+	 */
+	public void add(long framePosition, int frameLength, int size)
+	{
+		if (count == framePositions.length)
+		{
+			framePositions = Arrays.copyOf(framePositions, count * 2);
+			frameLengths = Arrays.copyOf(frameLengths, count * 2);
+			starts = Arrays.copyOf(starts, count * 2 + 1);
+		}
+		framePositions[count] = framePosition;
+		frameLengths[count] = frameLength;
+		starts[count + 1] = starts[count] + size;
+		count++;
+	}
+
+	/**
+	 * Gets the number of blocks
+	 * @return the number of blocks
+	 */
+	public int size()
+	{
+		return count;
+	}
+
+	/**
+	 * Gets the position of a frame in the compressed file
+	 * @param block - the block number
+	 * @return the position of the frame
+	 */
+	public long getFramePosition(int block)
+	{
+		return framePositions[block];
+	}
+
+	/**
+	 * Gets the length of a frame
+	 * @param block - the block number
+	 * @return the length of the frame
+	 */
+	public int getFrameLength(int block)
+	{
+		return frameLengths[block];
+	}
+
+	/**
+	 * Gets the position of a block in the original file
+	 * @param block - the block number
+	 * @return the position of the first byte of the block
+	 */
+	public long getStart(int block)
+	{
+		return starts[block];
+	}
+
+	/**
+	 * Gets the number of bytes a block decompresses to
+	 * @param block - the block number
+	 * @return the size of the block
+	 */
+	public int getSize(int block)
+	{
+		return (int) (starts[block + 1] - starts[block]);
+	}
+
+	/**
+	 * Gets the length of the original file
+	 * @return the total size of all blocks
+	 */
+	public long getTotalSize()
+	{
+		return starts[count];
+	}
+
+	/**
+	 * Finds the block holding a position of the original file
+	 * @param position - a position in the original file
+	 * @return the block number
+	 */
+	public int findBlock(long position)
+	{
+		int low = 0;
+		int high = count - 1;
+		while (low < high)
+		{
+			int mid = (low + high + 1) >>> 1;
+			if (starts[mid] <= position)
+				low = mid;
+			else
+				high = mid - 1;
+		}
+		return low;
+	}
+
+	/**
+	 * Writes the index and its trailer
+	 * @param out - the compressed stream, positioned after the last frame
+	 * @param position - the position of out in the compressed file
+	 * @throws IOException - file IO error
+	 */
+	public void write(DataOutputStream out, long position) throws IOException
+	{
+		for (int i = 0; i < count; i++)
+		{
+			out.writeLong(framePositions[i]);
+			out.writeInt(frameLengths[i]);
+			out.writeInt(getSize(i));
+		}
+		out.writeInt(count);
+		out.writeLong(position);
+		out.writeInt(MAGIC);
+	}
+
+	/**
+	 * Reads the index at the end of a file of compressed blocks
+	 * @param channel - the compressed file
+	 * @return the index
+	 * @throws IOException - file IO error, or the file has no index
+	 */
+	public static BlockIndex read(FileChannel channel) throws IOException
+	{
+		long end = channel.size();
+		if (end < TRAILER_SIZE)
+			throw new IOException("Compressed file has no block index");
+		ByteBuffer trailer = readFully(channel, end - TRAILER_SIZE, TRAILER_SIZE);
+		int count = trailer.getInt();
+		long position = trailer.getLong();
+		if (trailer.getInt() != MAGIC || count < 0 || position < 0
+				|| position + (long) count * ENTRY_SIZE != end - TRAILER_SIZE)
+			throw new IOException("Compressed file has no block index");
+
+		BlockIndex index = new BlockIndex();
+		ByteBuffer entries = readFully(channel, position, count * ENTRY_SIZE);
+		for (int i = 0; i < count; i++)
+		{
+			long framePosition = entries.getLong();
+			int frameLength = entries.getInt();
+			int size = entries.getInt();
+			if (framePosition < 0 || frameLength < 0 || size < 0 || framePosition + frameLength > position)
+				throw new IOException("Corrupt block index");
+			index.add(framePosition, frameLength, size);
+		}
+		return index;
+	}
+
+	/**
+	 * Reads part of a file at a given position without moving the channel
+	 * @param channel - the file
+	 * @param position - where to start reading
+	 * @param length - the number of bytes to read
+	 * @return a buffer holding the bytes, ready to be read
+	 * @throws IOException - file IO error, or the file is too short
+	 */
+	public static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining())
+		{
+			int n = channel.read(buffer, position + buffer.position());
+			if (n < 0)
+				throw new IOException("Unexpected end of compressed file");
+		}
+		buffer.flip();
+		return buffer;
+	}
+}
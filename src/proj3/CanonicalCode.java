@@ -0,0 +1,250 @@
+package proj3;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Canonical Huffman code. Only the code length of each symbol is needed to
+ * rebuild the code: symbols are sorted by code length and then by value, and
+ * the codes are handed out in that order by counting upward.
+ */
+public class CanonicalCode {
+
+	/**
+	 * Longest code length that can be stored and decoded
+	 */
+	public static final int MAX_CODE_LENGTH = 63;
+
+	/**
+	 * Symbols in canonical order
+	 */
+	private int[] symbols;
+	/**
+	 * Code length of each symbol, in canonical order
+	 */
+	private int[] lengths;
+	/**
+	 * Code of each symbol, right aligned, in canonical order
+	 */
+	private long[] codes;
+
+	/**
+	 * Constructor which assigns canonical codes to symbols
+	 * @param symbols - the symbols, in any order
+	 * @param lengths - the code length of each symbol
+	 * @throws IllegalArgumentException - the lengths do not describe a prefix code
+	 */
+	public CanonicalCode(int[] symbols, int[] lengths)
+	{
+		int n = symbols.length;
+
+		//Sort by length, then by symbol
+		long[] keys = new long[n];
+		for (int i = 0; i < n; i++)
+		{
+			if (lengths[i] < 1 || lengths[i] > MAX_CODE_LENGTH)
+				throw new IllegalArgumentException("Bad code length " + lengths[i]);
+			keys[i] = ((long) lengths[i] << 32) | (symbols[i] & 0xFFFFFFFFL);
+		}
+		Arrays.sort(keys);
+
+		int[] sorted = symbols.clone();
+		Arrays.sort(sorted);
+		for (int i = 1; i < n; i++)
+			if (sorted[i] == sorted[i - 1])
+				throw new IllegalArgumentException("Duplicate symbol " + sorted[i]);
+
+		this.symbols = new int[n];
+		this.lengths = new int[n];
+		this.codes = new long[n];
+
+		//Count upward, shifting left whenever the code length grows
+		long code = 0;
+		int prevLength = 0;
+		for (int i = 0; i < n; i++)
+		{
+			int len = (int) (keys[i] >>> 32);
+			if (i > 0)
+				code++;
+			code <<= (len - prevLength);
+			if (len < 64 && (code >>> len) != 0)
+				throw new IllegalArgumentException("Code lengths are oversubscribed");
+
+			this.symbols[i] = (int) keys[i];
+			this.lengths[i] = len;
+			this.codes[i] = code;
+			prevLength = len;
+		}
+	}
+
+	/**
+	 * Finds the code length of every leaf of a Huffman tree
+	 * @param huffTree - the Huffman tree
+	 * @param symbols - receives the symbol of each leaf
+	 * @param lengths - receives the depth of each leaf
+	 * @param freqs - receives the frequency of each leaf
+	 */
+	public static void lengthsOf(BinaryTree<CharacterMapping> huffTree, ArrayList<Integer> symbols, ArrayList<Integer> lengths, ArrayList<Long> freqs)
+	{
+		BinaryNode<CharacterMapping> root = huffTree.getRoot();
+		if (null == root)
+			return;
+		if (null == root.getLeft() && null == root.getRight()) //A lone symbol still needs one bit
+		{
+			symbols.add((int) root.getElement().getCh().get(0));
+			lengths.add(1);
+			freqs.add(root.getElement().getFreq());
+			return;
+		}
+		lengthsOf(root, 0, symbols, lengths, freqs);
+	}
+
+	/**
+	 * Recursively finds the depth of every leaf below a node
+	 * @param node - the root of the subtree
+	 * @param depth - the depth of node
+	 * @param symbols - receives the symbol of each leaf
+	 * @param lengths - receives the depth of each leaf
+	 * @param freqs - receives the frequency of each leaf
+	 */
+	private static void lengthsOf(BinaryNode<CharacterMapping> node, int depth, ArrayList<Integer> symbols, ArrayList<Integer> lengths, ArrayList<Long> freqs)
+	{
+		if (null == node.getLeft() && null == node.getRight())
+		{
+			symbols.add((int) node.getElement().getCh().get(0));
+			lengths.add(depth);
+			freqs.add(node.getElement().getFreq());
+			return;
+		}
+		if (null != node.getLeft())
+			lengthsOf(node.getLeft(), depth + 1, symbols, lengths, freqs);
+		if (null != node.getRight())
+			lengthsOf(node.getRight(), depth + 1, symbols, lengths, freqs);
+	}
+
+	/**
+	 * Builds the Huffman tree described by the canonical codes. Only the
+	 * leaves carry symbols; internal nodes hold an empty mapping.
+	 * @return the decoding tree
+	 */
+	public BinaryTree<CharacterMapping> toTree()
+	{
+		BinaryTree<CharacterMapping> tree = new BinaryTree<CharacterMapping>(internal());
+		BinaryNode<CharacterMapping> root = tree.getRoot();
+
+		for (int i = 0; i < symbols.length; i++)
+		{
+			BinaryNode<CharacterMapping> node = root;
+			for (int bit = lengths[i] - 1; bit >= 0; bit--)
+			{
+				boolean right = ((codes[i] >>> bit) & 1) != 0;
+				BinaryNode<CharacterMapping> child = right ? node.getRight() : node.getLeft();
+				if (null == child)
+				{
+					CharacterMapping element;
+					if (bit == 0)
+					{
+						ArrayList<Character> chrs = new ArrayList<Character>();
+						chrs.add((char) symbols[i]);
+						element = new CharacterMapping(chrs, 0L);
+					}
+					else
+						element = internal();
+					child = new BinaryNode<CharacterMapping>(element, null, null);
+					if (right)
+						node.setRight(child);
+					else
+						node.setLeft(child);
+				}
+				node = child;
+			}
+		}
+		return tree;
+	}
+
+	/**
+	 * Gets the number of symbols in the code
+	 * @return the number of symbols
+	 */
+	public int size()
+	{
+		return symbols.length;
+	}
+
+	/**
+	 * Gets a symbol
+	 * @param i - the position of the symbol in canonical order
+	 * @return the symbol
+	 */
+	public int getSymbol(int i)
+	{
+		return symbols[i];
+	}
+
+	/**
+	 * Gets the code length of a symbol
+	 * @param i - the position of the symbol in canonical order
+	 * @return the code length
+	 */
+	public int getLength(int i)
+	{
+		return lengths[i];
+	}
+
+	/**
+	 * Gets the code of a symbol
+	 * @param i - the position of the symbol in canonical order
+	 * @return the code, right aligned
+	 */
+	public long getCode(int i)
+	{
+		return codes[i];
+	}
+
+	/**
+	 * Gets the codes in a table indexed by symbol, for the encoder
+	 * @param alphabetSize - one more than the largest symbol
+	 * @return the code of each symbol, 0 for symbols without a code
+	 */
+	public long[] getCodeTable(int alphabetSize)
+	{
+		long[] table = new long[alphabetSize];
+		for (int i = 0; i < symbols.length; i++)
+			table[symbols[i]] = codes[i];
+		return table;
+	}
+
+	/**
+	 * Gets the code lengths in a table indexed by symbol, for the encoder
+	 * @param alphabetSize - one more than the largest symbol
+	 * @return the code length of each symbol, 0 for symbols without a code
+	 */
+	public int[] getLengthTable(int alphabetSize)
+	{
+		int[] table = new int[alphabetSize];
+		for (int i = 0; i < symbols.length; i++)
+			table[symbols[i]] = lengths[i];
+		return table;
+	}
+
+	/**
+	 * Gets one more than the largest symbol in the code
+	 * @return the size of a table indexed by symbol
+	 */
+	public int alphabetSize()
+	{
+		int size = 0;
+		for (int symbol : symbols)
+			size = Math.max(size, symbol + 1);
+		return size;
+	}
+
+	/**
+	 * Creates the element stored in an internal node of a rebuilt tree
+	 * @return an empty mapping
+	 */
+	private static CharacterMapping internal()
+	{
+		return new CharacterMapping(new ArrayList<Character>(), 0L);
+	}
+}
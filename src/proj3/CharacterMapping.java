@@ -15,14 +15,14 @@ public class CharacterMapping implements Comparable<CharacterMapping>{
 	/**
 	 * The frequency of every character in the ArrayList
 	 */
-	private Integer freq;
+	private Long freq;
 	
 	/**
 	 * Constructor which initializes the data members 
 	 * @param ch - the ArrayList of characters passed in
 	 * @param freq - the frequency of each character
 	 */
-	public CharacterMapping(ArrayList<Character> ch, Integer freq)
+	public CharacterMapping(ArrayList<Character> ch, Long freq)
 	{
 		this.ch = ch;
 		this.freq = freq;
@@ -41,7 +41,7 @@ public class CharacterMapping implements Comparable<CharacterMapping>{
 	 * Gets the frequency of the characters
 	 * @return
 	 */
-	public Integer getFreq()
+	public Long getFreq()
 	{
 		return freq;
 	}
@@ -0,0 +1,396 @@
+package proj3;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of built codes and decoding tables, for jobs that compress
+ * many inputs with nearly the same symbol counts, such as shards of one log.
+ *
+ * Codes are filed under a fingerprint of the counts in which every count is
+ * rounded down to a power of two relative to the total and the rarest symbols
+ * are left out, so inputs with similar distributions share an entry. A cached
+ * code is only reused if it has a code for every symbol that occurs and its
+ * encoded size is within the tolerance of the best size: first against the
+ * entropy, which needs no code at all, and failing that against the Huffman
+ * code built for the counts. Decoding tables are filed under the code they
+ * decode.
+ *
+ * Both kinds of entry are dropped least recently used first once the cache
+ * holds more than its capacity. Safe to use from several threads; codes and
+ * tables are built outside the lock.
+ */
+public class CodeCache {
+
+	/**
+	 * Number of entries of each kind kept by default
+	 */
+	public static final int DEFAULT_CAPACITY = 64;
+	/**
+	 * Fraction by which a cached code may be larger than the best code by default
+	 */
+	public static final double DEFAULT_TOLERANCE = 0.01;
+	/**
+	 * Number of powers of two a relative count is rounded to; symbols rarer
+	 * than that are left out of the fingerprint
+	 */
+	private static final int LEVELS = 8;
+
+	/**
+	 * A cached code with its code lengths indexed by symbol
+	 */
+	private static class Entry
+	{
+		private CanonicalCode code;
+		private int[] lengths;
+
+		public Entry(CanonicalCode code)
+		{
+			this.code = code;
+			this.lengths = code.getLengthTable(code.alphabetSize());
+		}
+	}
+
+	/**
+	 * A cached decoding table with the code it decodes
+	 */
+	private static class Decoder
+	{
+		private CanonicalCode code;
+		private DecodeTable table;
+
+		public Decoder(CanonicalCode code, DecodeTable table)
+		{
+			this.code = code;
+			this.table = table;
+		}
+	}
+
+	/**
+	 * Map in access order that drops its eldest entry when full
+	 */
+	private class LruMap<V> extends LinkedHashMap<Long, V>
+	{
+		private static final long serialVersionUID = 1L;
+
+		public LruMap()
+		{
+			super(16, 0.75f, true);
+		}
+
+		protected boolean removeEldestEntry(Map.Entry<Long, V> eldest)
+		{
+			if (size() <= capacity)
+				return false;
+			evictions++;
+			return true;
+		}
+	}
+
+	/**
+	 * Number of entries of each kind kept
+	 */
+	private int capacity;
+	/**
+	 * Fraction by which a cached code may be larger than the best code
+	 */
+	private double tolerance;
+	/**
+	 * Codes by fingerprint of the counts and the longest code length allowed
+	 */
+	private LruMap<Entry> codes;
+	/**
+	 * Decoding tables by fingerprint of the code
+	 */
+	private LruMap<Decoder> decoders;
+	/**
+	 * Number of lookups answered from the cache
+	 */
+	private long hits;
+	/**
+	 * Number of lookups that had to build a code or table
+	 */
+	private long misses;
+	/**
+	 * Number of misses where a code was cached but too costly for the counts
+	 */
+	private long rejects;
+	/**
+	 * Number of entries dropped to stay within the capacity
+	 */
+	private long evictions;
+
+	/**
+	 * Constructor with the default capacity and tolerance
+	 */
+	public CodeCache()
+	{
+		this(DEFAULT_CAPACITY, DEFAULT_TOLERANCE);
+	}
+
+	/**
+	 * Constructor which initializes the data members
+	 * @param capacity - the number of codes, and of decoding tables, kept
+	 * @param tolerance - the fraction by which a cached code may be larger than the best code
+	 */
+	public CodeCache(int capacity, double tolerance)
+	{
+		if (capacity < 1)
+			throw new IllegalArgumentException("Cache capacity must be positive");
+		if (!(tolerance >= 0))
+			throw new IllegalArgumentException("Bad cache tolerance " + tolerance);
+		this.capacity = capacity;
+		this.tolerance = tolerance;
+		this.codes = new LruMap<Entry>();
+		this.decoders = new LruMap<Decoder>();
+	}
+
+	/**
+	 * Finds a code for the counts, reusing a cached code for similar counts if
+	 * it is good enough and building and caching one otherwise
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @param maxLength - the longest code length allowed
+	 * @return the code
+	 */
+	public CanonicalCode codeFor(long[] counts, int maxLength)
+	{
+		long key = fingerprint(counts, maxLength);
+		Entry entry;
+		synchronized (this)
+		{
+			entry = codes.get(key);
+		}
+
+		int[] lengths = null;
+		if (null != entry)
+		{
+			long cost = codedBits(counts, entry.lengths);
+			boolean reuse = cost >= 0 && cost <= (1 + tolerance) * entropyBits(counts);
+			if (!reuse && cost >= 0)
+			{
+				//The entropy can be up to a bit per symbol below the best code; compare with that code
+				lengths = HuffmanLengths.build(counts);
+				reuse = cost <= (1 + tolerance) * codedBits(counts, lengths);
+			}
+			synchronized (this)
+			{
+				if (reuse)
+				{
+					hits++;
+					return entry.code;
+				}
+				rejects++;
+			}
+		}
+
+		if (null == lengths)
+			lengths = HuffmanLengths.build(counts);
+		CanonicalCode code = Proj3.createCanonicalCode(counts, lengths, maxLength);
+		synchronized (this)
+		{
+			misses++;
+			codes.put(key, new Entry(code));
+		}
+		return code;
+	}
+
+	/**
+	 * Finds the decoding table for a code, building and caching it if need be
+	 * @param code - the code
+	 * @return the decoding table
+	 */
+	public DecodeTable decoderFor(CanonicalCode code)
+	{
+		long key = fingerprint(code);
+		synchronized (this)
+		{
+			Decoder decoder = decoders.get(key);
+			if (null != decoder && sameCode(decoder.code, code))
+			{
+				hits++;
+				return decoder.table;
+			}
+		}
+
+		DecodeTable table = new DecodeTable(code);
+		synchronized (this)
+		{
+			misses++;
+			decoders.put(key, new Decoder(code, table));
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the number of lookups answered from the cache
+	 * @return the number of hits
+	 */
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups that had to build a code or table
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	/**
+	 * Gets the number of misses where a code for similar counts was cached but
+	 * was too costly for the counts looked up
+	 * @return the number of rejected codes
+	 */
+	public synchronized long getRejects()
+	{
+		return rejects;
+	}
+
+	/**
+	 * Gets the number of entries dropped to stay within the capacity
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Gets the number of codes and decoding tables held
+	 * @return the number of entries
+	 */
+	public synchronized int size()
+	{
+		return codes.size() + decoders.size();
+	}
+
+	/**
+	 * Empties the cache and resets the statistics
+	 */
+	public synchronized void clear()
+	{
+		codes.clear();
+		decoders.clear();
+		hits = 0;
+		misses = 0;
+		rejects = 0;
+		evictions = 0;
+	}
+
+	/**
+	 * Describes the statistics of the cache
+	 * @return the statistics in one line
+	 */
+	public synchronized String toString()
+	{
+		return "Code cache: " + hits + " hits, " + misses + " misses (" + rejects + " over tolerance), "
+				+ evictions + " evictions, " + (codes.size() + decoders.size()) + " entries.";
+	}
+
+	/**
+	 * Hashes the counts with each count rounded down to a power of two relative
+	 * to the total, leaving out symbols rarer than LEVELS powers of two
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @param maxLength - the longest code length allowed
+	 * @return the fingerprint
+	 */
+	private static long fingerprint(long[] counts, int maxLength)
+	{
+		long total = 0;
+		for (long count : counts)
+			total += count;
+		int totalLog = 63 - Long.numberOfLeadingZeros(Math.max(1, total));
+
+		long hash = mix(0x9E3779B97F4A7C15L, ((long) maxLength << 32) | counts.length);
+		for (int s = 0; s < counts.length; s++)
+		{
+			if (counts[s] == 0)
+				continue;
+			int level = (63 - Long.numberOfLeadingZeros(counts[s])) - totalLog + LEVELS;
+			if (level > 0)
+				hash = mix(hash, ((long) s << 8) | level);
+		}
+		return hash;
+	}
+
+	/**
+	 * Hashes the symbols and code lengths of a code
+	 * @param code - the code
+	 * @return the fingerprint
+	 */
+	private static long fingerprint(CanonicalCode code)
+	{
+		long hash = mix(0x9E3779B97F4A7C15L, code.size());
+		for (int i = 0; i < code.size(); i++)
+			hash = mix(hash, ((long) code.getSymbol(i) << 8) | code.getLength(i));
+		return hash;
+	}
+
+	/**
+	 * Mixes a value into a hash
+	 * @param hash - the hash so far
+	 * @param value - the value
+	 * @return the new hash
+	 */
+	private static long mix(long hash, long value)
+	{
+		long h = (hash ^ value) * 0xBF58476D1CE4E5B9L;
+		return h ^ (h >>> 31);
+	}
+
+	/**
+	 * Checks whether two codes give every symbol the same code
+	 * @param a - a code
+	 * @param b - another code
+	 * @return true if the codes are the same
+	 */
+	private static boolean sameCode(CanonicalCode a, CanonicalCode b)
+	{
+		if (a.size() != b.size())
+			return false;
+		for (int i = 0; i < a.size(); i++)
+			if (a.getSymbol(i) != b.getSymbol(i) || a.getLength(i) != b.getLength(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Adds up the encoded size of the counts with the given code lengths
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @param lengths - the code length of each symbol, indexed by symbol
+	 * @return the size in bits, or -1 if a symbol that occurs has no code
+	 */
+	private static long codedBits(long[] counts, int[] lengths)
+	{
+		long bits = 0;
+		for (int s = 0; s < counts.length; s++)
+		{
+			if (counts[s] == 0)
+				continue;
+			if (s >= lengths.length || lengths[s] == 0)
+				return -1;
+			bits += counts[s] * lengths[s];
+		}
+		return bits;
+	}
+
+	/**
+	 * Finds the entropy of the counts, a lower bound on the size of any code for them
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @return the size in bits
+	 */
+	private static double entropyBits(long[] counts)
+	{
+		long total = 0;
+		for (long count : counts)
+			total += count;
+		double bits = 0;
+		for (long count : counts)
+			if (count > 0)
+				bits += count * (Math.log((double) total / count) / Math.log(2));
+		return bits;
+	}
+}
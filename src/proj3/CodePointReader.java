@@ -0,0 +1,85 @@
+package proj3;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Reads the Unicode code points of text, joining each surrogate pair into the
+ * supplementary character it stands for. A surrogate that is not part of a
+ * pair is read as a code point of its own, so the text can still be written
+ * back exactly. Characters are read in large blocks, and a pair split across
+ * two blocks is still joined.
+ */
+public class CodePointReader {
+
+	/**
+	 * The text
+	 */
+	private Reader reader;
+	/**
+	 * Characters read but not yet handed out
+	 */
+	private char[] buffer;
+	/**
+	 * Position of the next character in buffer
+	 */
+	private int pos;
+	/**
+	 * Number of characters of buffer in use
+	 */
+	private int limit;
+
+	/**
+	 * Constructor which wraps a reader
+	 * @param reader - the text
+	 * @param bufferSize - the number of characters read at a time, at least 2
+	 */
+	public CodePointReader(Reader reader, int bufferSize)
+	{
+		this.reader = reader;
+		this.buffer = new char[Math.max(2, bufferSize)];
+	}
+
+	/**
+	 * Reads one code point
+	 * @return the code point, or -1 at the end of the text
+	 * @throws IOException - IO error
+	 */
+	public int read() throws IOException
+	{
+		//Make sure a high surrogate is never the last character held unless the text ends there
+		if (limit - pos < 2 && !fill())
+			return -1;
+		char c = buffer[pos++];
+		if (Character.isHighSurrogate(c) && pos < limit && Character.isLowSurrogate(buffer[pos]))
+			return Character.toCodePoint(c, buffer[pos++]);
+		return c;
+	}
+
+	/**
+	 * Closes the underlying reader
+	 * @throws IOException - IO error
+	 */
+	public void close() throws IOException
+	{
+		reader.close();
+	}
+
+	/**
+	 * Moves what is left of the buffer to its start and reads more after it
+	 * @return false if nothing is left and the text has ended
+	 * @throws IOException - IO error
+	 */
+	private boolean fill() throws IOException
+	{
+		System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+		limit -= pos;
+		pos = 0;
+		int n = reader.read(buffer, limit, buffer.length - limit);
+		while (n == 0)
+			n = reader.read(buffer, limit, buffer.length - limit);
+		if (n > 0)
+			limit += n;
+		return limit > 0;
+	}
+}
@@ -0,0 +1,401 @@
+package proj3;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Order-1 context model over the byte alphabet: every byte is coded with a
+ * table chosen by the byte before it, which in text is a strong hint of what
+ * comes next. The first byte is coded in a context of its own.
+ *
+ * A context only gets its own table if the bits it saves over the order-0
+ * code outweigh the cost of storing the table. All other contexts are
+ * clustered together and share one fallback table built from their combined
+ * counts. Codes are limited to MAX_CODE_LENGTH bits so that every length fits
+ * in LENGTH_BITS bits.
+ *
+ * Layout of a compressed file, big-endian:
+ *   int    magic number "HUFX"
+ *   byte   format version
+ *   long   number of bytes of original data
+ *   then, as bits:
+ *   COUNT_BITS bits the number of contexts with their own table
+ *   CONTEXTS bits   1 for each context with its own table, in order of context,
+ *                   left out if none or all of them have one
+ *   then the tables of those contexts in the same order, and the fallback table, each as:
+ *   ALPHABET_SIZE bits   1 for each symbol with a code
+ *   LENGTH_BITS bits     the code length of each of those symbols
+ *   and finally the coded bits, ending with the end of file symbol
+ */
+public class ContextHuffman {
+
+	/**
+	 * Magic number identifying a file compressed with contexts
+	 */
+	public static final int MAGIC = 0x48554658;
+	/**
+	 * Current format version
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * Number of symbols: the 256 byte values and the end of file symbol
+	 */
+	public static final int ALPHABET_SIZE = Proj3.EOF_SYMBOL + 1;
+	/**
+	 * Context of the first byte, which has no byte before it
+	 */
+	public static final int START_CONTEXT = 256;
+	/**
+	 * Number of contexts: one per byte value and the start context
+	 */
+	public static final int CONTEXTS = START_CONTEXT + 1;
+	/**
+	 * Longest code length in any table
+	 */
+	public static final int MAX_CODE_LENGTH = 15;
+	/**
+	 * Number of bits storing a code length
+	 */
+	private static final int LENGTH_BITS = 4;
+	/**
+	 * Number of bits storing the number of contexts with their own table
+	 */
+	private static final int COUNT_BITS = 9;
+	/**
+	 * Size of the input buffer
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The table chosen for each context and the code of each table
+	 */
+	private static class Model
+	{
+		/**
+		 * Table used by each context
+		 */
+		private int[] tableOf = new int[CONTEXTS];
+		/**
+		 * Whether each context has a table of its own
+		 */
+		private boolean[] owned = new boolean[CONTEXTS];
+		/**
+		 * Code of each table; the last one is the fallback table
+		 */
+		private CanonicalCode[] codes;
+	}
+
+	/**
+	 * Counts each symbol in the context of the byte before it. The end of file
+	 * symbol is counted once, in the context of the last byte.
+	 * @param in - the data
+	 * @return the counts, indexed by context and then by symbol
+	 * @throws IOException - IO error
+	 */
+	public static long[][] countPairs(InputStream in) throws IOException
+	{
+		long[][] counts = new long[CONTEXTS][ALPHABET_SIZE];
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int prev = START_CONTEXT;
+		int n = in.read(buffer);
+		while (n != -1)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				int b = buffer[i] & 0xFF;
+				counts[prev][b]++;
+				prev = b;
+			}
+			n = in.read(buffer);
+		}
+		counts[prev][Proj3.EOF_SYMBOL]++;
+		return counts;
+	}
+
+	/**
+	 * Compresses the bytes of a file, reading it once to count and once to encode
+	 * @param inputFile - the name of the file to be compressed
+	 * @param out - receives the compressed data
+	 * @return the number of tables written, the fallback table included
+	 * @throws IOException - file IO error, or the file changed between the passes
+	 */
+	public static int compress(String inputFile, OutputStream out) throws IOException
+	{
+		InputStream in = new FileInputStream(inputFile);
+		long[][] counts;
+		try
+		{
+			counts = countPairs(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		long length = -1; //the end of file symbol is not part of the data
+		for (long[] row : counts)
+			for (long count : row)
+				length += count;
+
+		Model model = buildModel(counts);
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeLong(length);
+		data.flush();
+		BitOutput bits = new BitOutput(out);
+		writeModel(model, bits);
+
+		//Flatten the codes so that a context and a byte find their code in one step
+		int tables = model.codes.length;
+		long[] codeBits = new long[tables * ALPHABET_SIZE];
+		int[] codeLengths = new int[tables * ALPHABET_SIZE];
+		for (int t = 0; t < tables; t++)
+		{
+			System.arraycopy(model.codes[t].getCodeTable(ALPHABET_SIZE), 0, codeBits, t * ALPHABET_SIZE, ALPHABET_SIZE);
+			System.arraycopy(model.codes[t].getLengthTable(ALPHABET_SIZE), 0, codeLengths, t * ALPHABET_SIZE, ALPHABET_SIZE);
+		}
+		int[] base = new int[CONTEXTS];
+		for (int c = 0; c < CONTEXTS; c++)
+			base[c] = model.tableOf[c] * ALPHABET_SIZE;
+
+		in = new BufferedInputStream(new FileInputStream(inputFile), BUFFER_SIZE);
+		try
+		{
+			byte[] buffer = new byte[BUFFER_SIZE];
+			long seen = 0;
+			int prev = START_CONTEXT;
+			int n = in.read(buffer);
+			while (n != -1)
+			{
+				seen += n;
+				for (int i = 0; i < n; i++)
+				{
+					int b = buffer[i] & 0xFF;
+					int k = base[prev] + b;
+					if (codeLengths[k] == 0)
+						throw new IOException("File changed while it was being compressed");
+					bits.writeBits(codeBits[k], codeLengths[k]);
+					prev = b;
+				}
+				n = in.read(buffer);
+			}
+			int k = base[prev] + Proj3.EOF_SYMBOL;
+			if (seen != length || codeLengths[k] == 0)
+				throw new IOException("File changed while it was being compressed");
+			bits.writeBits(codeBits[k], codeLengths[k]);
+			bits.flush();
+		}
+		finally
+		{
+			in.close();
+		}
+		return tables;
+	}
+
+	/**
+	 * Decompresses data written by compress
+	 * @param in - the compressed data
+	 * @param out - receives the original data
+	 * @throws IOException - IO error, or the data is corrupt
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not compressed with contexts");
+		int version = data.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported format version " + version);
+		long length = data.readLong();
+		if (length < 0)
+			throw new IOException("Corrupt length " + length);
+
+		BitInput bits = new BitInput(in);
+		Model model = readModel(bits);
+		DecodeTable[] tables = new DecodeTable[model.codes.length];
+		for (int t = 0; t < tables.length; t++)
+			tables[t] = new DecodeTable(model.codes[t]);
+		DecodeTable[] tableOf = new DecodeTable[CONTEXTS];
+		for (int c = 0; c < CONTEXTS; c++)
+			tableOf[c] = tables[model.tableOf[c]];
+
+		byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(1, length))];
+		int pos = 0;
+		int prev = START_CONTEXT;
+		for (long i = 0; i < length; i++)
+		{
+			int symbol = tableOf[prev].decode(bits);
+			if (symbol < 0 || symbol >= Proj3.EOF_SYMBOL)
+				throw new IOException("Compressed file is truncated or corrupt");
+			if (pos == buffer.length)
+			{
+				out.write(buffer, 0, pos);
+				pos = 0;
+			}
+			buffer[pos++] = (byte) symbol;
+			prev = symbol;
+		}
+		out.write(buffer, 0, pos);
+		if (tableOf[prev].decode(bits) != Proj3.EOF_SYMBOL)
+			throw new IOException("Compressed file is missing its end of file symbol");
+		out.flush();
+	}
+
+	/**
+	 * Chooses the contexts that get a table of their own and builds every table
+	 * @param counts - the counts, indexed by context and then by symbol
+	 * @return the model
+	 */
+	private static Model buildModel(long[][] counts)
+	{
+		long[] global = new long[ALPHABET_SIZE];
+		for (long[] row : counts)
+			for (int s = 0; s < ALPHABET_SIZE; s++)
+				global[s] += row[s];
+		int[] globalLengths = HuffmanLengths.build(global);
+
+		//A context earns its own table if it saves more than the table costs to store
+		Model model = new Model();
+		long[] fallback = new long[ALPHABET_SIZE];
+		int owned = 0;
+		for (int c = 0; c < CONTEXTS; c++)
+		{
+			int[] lengths = HuffmanLengths.build(counts[c]);
+			long ownBits = ALPHABET_SIZE;
+			long sharedBits = 0;
+			for (int s = 0; s < ALPHABET_SIZE; s++)
+			{
+				if (counts[c][s] == 0)
+					continue;
+				ownBits += counts[c][s] * lengths[s] + LENGTH_BITS;
+				sharedBits += counts[c][s] * globalLengths[s];
+			}
+			model.owned[c] = ownBits < sharedBits;
+			if (model.owned[c])
+				owned++;
+			else
+				for (int s = 0; s < ALPHABET_SIZE; s++)
+					fallback[s] += counts[c][s];
+		}
+
+		model.codes = new CanonicalCode[owned + 1];
+		int t = 0;
+		for (int c = 0; c < CONTEXTS; c++)
+		{
+			if (model.owned[c])
+			{
+				model.codes[t] = Proj3.createCanonicalCode(counts[c], MAX_CODE_LENGTH);
+				model.tableOf[c] = t++;
+			}
+			else
+				model.tableOf[c] = owned;
+		}
+		model.codes[owned] = Proj3.createCanonicalCode(fallback, MAX_CODE_LENGTH);
+		return model;
+	}
+
+	/**
+	 * Writes which contexts have their own table, and every table
+	 * @param model - the model
+	 * @param out - the bit stream
+	 * @throws IOException - IO error
+	 */
+	private static void writeModel(Model model, BitOutput out) throws IOException
+	{
+		int owned = model.codes.length - 1;
+		out.writeBits(owned, COUNT_BITS);
+		if (owned > 0 && owned < CONTEXTS)
+			for (int c = 0; c < CONTEXTS; c++)
+				out.writeBits(model.owned[c] ? 1 : 0, 1);
+		for (CanonicalCode code : model.codes)
+		{
+			int[] lengths = code.getLengthTable(ALPHABET_SIZE);
+			for (int s = 0; s < ALPHABET_SIZE; s++)
+				out.writeBits(lengths[s] == 0 ? 0 : 1, 1);
+			for (int s = 0; s < ALPHABET_SIZE; s++)
+				if (lengths[s] != 0)
+					out.writeBits(lengths[s], LENGTH_BITS);
+		}
+	}
+
+	/**
+	 * Reads what writeModel wrote and rebuilds the codes
+	 * @param in - the bit stream
+	 * @return the model
+	 * @throws IOException - IO error, or the tables are corrupt
+	 */
+	private static Model readModel(BitInput in) throws IOException
+	{
+		Model model = new Model();
+		int count = readBits(in, COUNT_BITS);
+		if (count > CONTEXTS)
+			throw new IOException("Corrupt context table count " + count);
+		int owned = 0;
+		for (int c = 0; c < CONTEXTS; c++)
+		{
+			model.owned[c] = (count == CONTEXTS) || (count > 0 && readBits(in, 1) == 1);
+			if (model.owned[c])
+				model.tableOf[c] = owned++;
+		}
+		if (owned != count)
+			throw new IOException("Corrupt context table map");
+		for (int c = 0; c < CONTEXTS; c++)
+			if (!model.owned[c])
+				model.tableOf[c] = owned;
+
+		model.codes = new CanonicalCode[owned + 1];
+		boolean[] present = new boolean[ALPHABET_SIZE];
+		for (int t = 0; t <= owned; t++)
+		{
+			int n = 0;
+			for (int s = 0; s < ALPHABET_SIZE; s++)
+			{
+				present[s] = readBits(in, 1) == 1;
+				if (present[s])
+					n++;
+			}
+			int[] symbols = new int[n];
+			int[] lengths = new int[n];
+			int k = 0;
+			for (int s = 0; s < ALPHABET_SIZE; s++)
+			{
+				if (!present[s])
+					continue;
+				symbols[k] = s;
+				lengths[k] = readBits(in, LENGTH_BITS);
+				if (lengths[k] == 0)
+					throw new IOException("Corrupt context table");
+				k++;
+			}
+			try
+			{
+				model.codes[t] = new CanonicalCode(symbols, lengths);
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new IOException("Corrupt context table: " + e.getMessage());
+			}
+		}
+		return model;
+	}
+
+	/**
+	 * Reads a number of plain bits
+	 * @param in - the bit stream
+	 * @param n - the number of bits
+	 * @return the bits, right aligned
+	 * @throws IOException - IO error, or the stream ended
+	 */
+	private static int readBits(BitInput in, int n) throws IOException
+	{
+		int value = in.peek(n);
+		if (!in.consume(n))
+			throw new IOException("Compressed file is truncated");
+		return value;
+	}
+}
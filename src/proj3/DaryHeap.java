@@ -0,0 +1,209 @@
+package proj3;
+
+/**
+ * Min-heap of (long priority, int payload) pairs, kept in parallel primitive
+ * arrays so that nothing is boxed and nothing is allocated per operation.
+ * Each node has d children (d = 2, 4 or 8); wider heaps are shallower, which
+ * trades more comparisons per level for fewer levels and cache misses.
+ * Pairs of equal priority come out in order of payload.
+ */
+public class DaryHeap
+{
+    /**
+     * Construct an empty binary heap.
+     */
+    public DaryHeap( )
+    {
+        this( 2, DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Construct an empty heap.
+     * @param arity the number of children of each node: 2, 4 or 8.
+     * @param capacity the number of pairs held before the arrays grow.
+     */
+    public DaryHeap( int arity, int capacity )
+    {
+        if( arity != 2 && arity != 4 && arity != 8 )
+            throw new IllegalArgumentException( "Arity must be 2, 4 or 8: " + arity );
+        shift = Integer.numberOfTrailingZeros( arity );
+        currentSize = 0;
+        priorities = new long[ Math.max( 1, capacity ) ];
+        payloads = new int[ Math.max( 1, capacity ) ];
+    }
+
+    /**
+     * Replaces the contents of the heap with n pairs and establishes heap
+     * order. Runs in linear time.
+     * @param priority the priority of each pair.
+     * @param payload the payload of each pair.
+     * @param n the number of pairs.
+     */
+    public void heapify( long [ ] priority, int [ ] payload, int n )
+    {
+        if( n > priorities.length )
+        {
+            priorities = new long[ n ];
+            payloads = new int[ n ];
+        }
+        System.arraycopy( priority, 0, priorities, 0, n );
+        System.arraycopy( payload, 0, payloads, 0, n );
+        currentSize = n;
+        for( int i = ( n - 2 ) >> shift; i >= 0; i-- )
+            percolateDown( i, priorities[ i ], payloads[ i ] );
+    }
+
+    /**
+     * Adds a pair to the heap.
+     * @param priority the priority; smaller comes out first.
+     * @param payload the payload.
+     */
+    public void add( long priority, int payload )
+    {
+        if( currentSize == priorities.length )
+            doubleArray( );
+
+            // Percolate up
+        int hole = currentSize++;
+        while( hole > 0 )
+        {
+            int parent = ( hole - 1 ) >> shift;
+            if( !less( priority, payload, priorities[ parent ], payloads[ parent ] ) )
+                break;
+            priorities[ hole ] = priorities[ parent ];
+            payloads[ hole ] = payloads[ parent ];
+            hole = parent;
+        }
+        priorities[ hole ] = priority;
+        payloads[ hole ] = payload;
+    }
+
+    /**
+     * Returns the priority of the smallest pair.
+     * @return the smallest priority.
+     * @throws NoSuchElementException if empty.
+     */
+    public long peekPriority( )
+    {
+        if( isEmpty( ) )
+            throw new NoSuchElementException( );
+        return priorities[ 0 ];
+    }
+
+    /**
+     * Returns the payload of the smallest pair.
+     * @return the payload of the smallest pair.
+     * @throws NoSuchElementException if empty.
+     */
+    public int peekPayload( )
+    {
+        if( isEmpty( ) )
+            throw new NoSuchElementException( );
+        return payloads[ 0 ];
+    }
+
+    /**
+     * Removes the smallest pair.
+     * @return the payload of the smallest pair.
+     * @throws NoSuchElementException if empty.
+     */
+    public int remove( )
+    {
+        int minPayload = peekPayload( );
+        currentSize--;
+        if( currentSize > 0 )
+            percolateDown( 0, priorities[ currentSize ], payloads[ currentSize ] );
+        return minPayload;
+    }
+
+    /**
+     * Returns the number of pairs in the heap.
+     * @return the number of pairs in the heap.
+     */
+    public int size( )
+    {
+        return currentSize;
+    }
+
+    /**
+     * Tests if the heap is empty.
+     * @return true if the heap holds no pairs.
+     */
+    public boolean isEmpty( )
+    {
+        return currentSize == 0;
+    }
+
+    /**
+     * Make the heap empty.
+     */
+    public void clear( )
+    {
+        currentSize = 0;
+    }
+
+    /**
+     * Returns the number of children of each node.
+     * @return the arity.
+     */
+    public int getArity( )
+    {
+        return 1 << shift;
+    }
+
+    private static final int DEFAULT_CAPACITY = 100;
+
+    private int shift;            // log2 of the arity
+    private int currentSize;      // Number of pairs in heap
+    private long [ ] priorities;  // The heap array of priorities
+    private int [ ] payloads;     // The heap array of payloads
+
+    /**
+     * Internal method to order pairs by priority, then by payload.
+     */
+    private static boolean less( long p1, int v1, long p2, int v2 )
+    {
+        return p1 < p2 || ( p1 == p2 && v1 < v2 );
+    }
+
+    /**
+     * Internal method to percolate down in the heap.
+     * @param hole the index at which the percolate begins.
+     * @param priority the priority of the pair being placed.
+     * @param payload the payload of the pair being placed.
+     */
+    private void percolateDown( int hole, long priority, int payload )
+    {
+        for( ; ; )
+        {
+            int first = ( hole << shift ) + 1;
+            if( first >= currentSize )
+                break;
+            int last = Math.min( first + ( 1 << shift ), currentSize );
+            int child = first;
+            for( int c = first + 1; c < last; c++ )
+                if( less( priorities[ c ], payloads[ c ], priorities[ child ], payloads[ child ] ) )
+                    child = c;
+            if( !less( priorities[ child ], payloads[ child ], priority, payload ) )
+                break;
+            priorities[ hole ] = priorities[ child ];
+            payloads[ hole ] = payloads[ child ];
+            hole = child;
+        }
+        priorities[ hole ] = priority;
+        payloads[ hole ] = payload;
+    }
+
+    /**
+     * Internal method to extend the arrays.
+     */
+    private void doubleArray( )
+    {
+        long [ ] newPriorities = new long[ priorities.length * 2 ];
+        int [ ] newPayloads = new int[ payloads.length * 2 ];
+        System.arraycopy( priorities, 0, newPriorities, 0, currentSize );
+        System.arraycopy( payloads, 0, newPayloads, 0, currentSize );
+        priorities = newPriorities;
+        payloads = newPayloads;
+    }
+}
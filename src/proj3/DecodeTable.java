@@ -0,0 +1,204 @@
+package proj3;
+
+import java.io.IOException;
+
+/**
+ * Lookup table decoder for a Huffman tree, built from its FlatTree. The primary table is indexed by
+ * the next PRIMARY_BITS bits of input and resolves every code of that length
+ * or shorter in a single lookup. Longer codes are resolved through secondary
+ * tables, one for each subtree that is still unfinished after the primary bits.
+ *
+ * Each entry is packed into an int:
+ *   leaf entry - (symbol << 8) | code length
+ *   link entry - (offset of secondary table << 8) | LINK | bits of secondary table
+ *   INVALID    - bits that do not start any code
+ */
+public class DecodeTable {
+
+	/**
+	 * Number of bits resolved by the primary table
+	 */
+	public static final int PRIMARY_BITS = 11;
+	/**
+	 * Maximum number of bits resolved by a secondary table
+	 */
+	public static final int SECONDARY_BITS = 8;
+
+	/**
+	 * Flag marking an entry as a link to a secondary table
+	 */
+	private static final int LINK = 0x80;
+	/**
+	 * Entry for bits that do not lead to a symbol
+	 */
+	private static final int INVALID = 0x40;
+	/**
+	 * Mask for the length or table bits of an entry
+	 */
+	private static final int LENGTH_MASK = 0x3F;
+
+	/**
+	 * The primary table followed by all secondary tables
+	 */
+	private int[] table;
+	/**
+	 * Number of entries of table in use
+	 */
+	private int size;
+	/**
+	 * Number of bits indexing the primary table
+	 */
+	private int primaryBits;
+
+	/**
+	 * Constructor which builds the lookup tables from a Huffman tree
+	 * @param huffTree - the Huffman tree used to encode
+	 */
+	public DecodeTable(BinaryTree<CharacterMapping> huffTree)
+	{
+		this(new FlatTree(huffTree));
+	}
+
+	/**
+	 * Constructor which builds the lookup tables from a canonical code, with no
+	 * BinaryTree in between
+	 * @param code - the canonical code used to encode
+	 */
+	public DecodeTable(CanonicalCode code)
+	{
+		this(new FlatTree(code));
+	}
+
+	/**
+	 * Constructor which builds the lookup tables from a flattened Huffman tree
+	 * @param tree - the flattened tree
+	 */
+	public DecodeTable(FlatTree tree)
+	{
+		primaryBits = Math.min(PRIMARY_BITS, tree.height());
+		table = new int[1 << PRIMARY_BITS];
+		if (tree.isEmpty())
+			table[size++] = INVALID;
+		else
+			build(tree, FlatTree.ROOT, primaryBits);
+	}
+
+	/**
+	 * Decodes the next symbol from the bit stream
+	 * @param in - the encoded bits
+	 * @return the decoded symbol, or -1 if the bits are not a code or the stream
+	 *         ended in the middle of a code
+	 * @throws IOException - file IO error
+	 */
+	public int decode(BitInput in) throws IOException
+	{
+		int bits = primaryBits;
+		int entry = table[in.peek(bits)];
+		while ((entry & LINK) != 0)
+		{
+			in.consume(bits);
+			bits = entry & LENGTH_MASK;
+			entry = table[(entry >>> 8) + in.peek(bits)];
+		}
+		if (entry == INVALID || !in.consume(entry & LENGTH_MASK))
+			return -1;
+		return entry >>> 8;
+	}
+
+	/**
+	 * Decodes the symbol at the front of a bit accumulator held by the caller.
+	 * The table is only read, so one table can serve many threads.
+	 * @param bits - the accumulator; its lowest count bits are the next bits of input, oldest first
+	 * @param count - the number of bits in the accumulator
+	 * @return (symbol << 8) | code length, or -1 if the bits are not a code or
+	 *         the accumulator ends in the middle of a code
+	 */
+	public int decode(long bits, int count)
+	{
+		int used = 0;
+		int n = primaryBits;
+		int entry = table[peek(bits, count, n)];
+		while ((entry & LINK) != 0)
+		{
+			used += n;
+			if (used > count)
+				return -1;
+			n = entry & LENGTH_MASK;
+			entry = table[(entry >>> 8) + peek(bits, count - used, n)];
+		}
+		int length = used + (entry & LENGTH_MASK);
+		if (entry == INVALID || length > count)
+			return -1;
+		return (entry & ~0xFF) | length;
+	}
+
+	/**
+	 * Gets the next n bits of an accumulator, padding with zeros past its end
+	 * @param bits - the accumulator
+	 * @param count - the number of bits left in the accumulator
+	 * @param n - the number of bits wanted
+	 * @return the bits, right aligned
+	 */
+	private static int peek(long bits, int count, int n)
+	{
+		if (count < n)
+			return (int) ((bits << (n - count)) & ((1L << n) - 1));
+		return (int) ((bits >>> (count - n)) & ((1L << n) - 1));
+	}
+
+	/**
+	 * Fills a table for the subtree rooted at node, creating secondary tables
+	 * for the subtrees that are deeper than the table. Missing children, as in
+	 * the tree of a single symbol, become invalid entries.
+	 * @param tree - the flattened tree
+	 * @param node - the internal node at the root of the subtree
+	 * @param bits - the number of bits indexing the table
+	 * @return the offset of the table
+	 */
+	private int build(FlatTree tree, int node, int bits)
+	{
+		int base = allocate(1 << bits);
+
+		for (int i = 0; i < (1 << bits); i++)
+		{
+			//Follow the bits of the index down the tree
+			int entry = node;
+			int depth = 0;
+			while (entry >= 0 && depth < bits)
+			{
+				entry = tree.getChild(entry, (i >>> (bits - 1 - depth)) & 1);
+				depth++;
+			}
+
+			if (entry == FlatTree.MISSING)
+				table[base + i] = INVALID;
+			else if (FlatTree.isLeaf(entry))
+				table[base + i] = (FlatTree.symbolOf(entry) << 8) | depth;
+			else
+			{
+				int subBits = Math.min(SECONDARY_BITS, tree.getHeight(entry));
+				int sub = build(tree, entry, subBits);
+				table[base + i] = (sub << 8) | LINK | subBits;
+			}
+		}
+		return base;
+	}
+
+	/**
+	 * Reserves space at the end of the table
+	 * @param entries - the number of entries needed
+	 * @return the offset of the reserved space
+	 */
+	private int allocate(int entries)
+	{
+		if (size + entries > table.length)
+		{
+			int[] newTable = new int[Math.max(table.length * 2, size + entries)];
+			System.arraycopy(table, 0, newTable, 0, size);
+			table = newTable;
+		}
+		int base = size;
+		size += entries;
+		return base;
+	}
+}
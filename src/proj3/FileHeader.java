@@ -0,0 +1,496 @@
+package proj3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Header written at the start of every compressed file, so that the file can
+ * be decompressed without the tree that was used to compress it.
+ *
+ * Layout, big-endian:
+ *   int    magic number "HUF3"
+ *   byte   format version
+ *   byte   alphabet: ALPHABET_CHARS, ALPHABET_BYTES or ALPHABET_CODE_POINTS
+ *          (absent in version 1, which only held characters; code points
+ *          need version 3)
+ *   long   number of symbols in the original file
+ *   then the code table, as written by writeCodeTable
+ *
+ * Only the code length of each symbol is stored, since the canonical code
+ * follows from the lengths. The table takes one of two layouts, whichever is
+ * smaller. The dense layout gives every symbol up to the largest coded one a
+ * length, 0 meaning no code, which suits the byte alphabet and plain text:
+ *   int    number of symbols with a code
+ *   byte   TABLE_DENSE
+ *   varint one more than the largest symbol with a code
+ *   byte   bits per packed length
+ *   bits   the code length of each symbol, in symbol order, high bits first,
+ *          padded to a byte
+ * The sparse layout suits code points, which may run to many thousands spread
+ * over all of Unicode. The symbols go in increasing order, each as a gap from
+ * the one before, and the code lengths follow packed in as few bits as their
+ * spread needs:
+ *   int    number of symbols with a code
+ *   byte   TABLE_SPARSE
+ *   varint each gap (symbol - previous symbol - 1, the first from -1)
+ *   byte   shortest code length
+ *   byte   bits per packed length
+ *   bits   each code length less the shortest, in symbol order, high bits
+ *          first, padded to a byte
+ * A varint holds 7 bits a byte, low bits first, with the high bit set on all
+ * but the last byte. Versions before 4 stored each symbol in a char and its
+ * length in a byte, in canonical order, except that code points always used
+ * the sparse layout with no layout byte.
+ *
+ * Text compressed as code points is always read and written back as
+ * CODE_POINT_CHARSET, whatever the platform charset is, so that every code
+ * point survives.
+ */
+public class FileHeader {
+
+	/**
+	 * Magic number identifying a compressed file
+	 */
+	public static final int MAGIC = 0x48554633;
+	/**
+	 * Current format version
+	 */
+	public static final int VERSION = 4;
+	/**
+	 * Symbols are the characters of a text file
+	 */
+	public static final int ALPHABET_CHARS = 0;
+	/**
+	 * Symbols are the bytes of a file, plus an end of file symbol
+	 */
+	public static final int ALPHABET_BYTES = 1;
+	/**
+	 * Symbols are the Unicode code points of a text file
+	 */
+	public static final int ALPHABET_CODE_POINTS = 2;
+	/**
+	 * Charset that text compressed as code points is read in and written back in
+	 */
+	public static final Charset CODE_POINT_CHARSET = StandardCharsets.UTF_8;
+	/**
+	 * Code table with a length for every symbol up to the largest one coded
+	 */
+	public static final int TABLE_DENSE = 0;
+	/**
+	 * Code table listing only the symbols that have a code
+	 */
+	public static final int TABLE_SPARSE = 1;
+
+	/**
+	 * The kind of symbols that were coded
+	 */
+	private int alphabet;
+	/**
+	 * Number of symbols in the original file
+	 */
+	private long length;
+	/**
+	 * The canonical code used for the data that follows the header
+	 */
+	private CanonicalCode code;
+
+	/**
+	 * Constructor which initializes the data members
+	 * @param alphabet - ALPHABET_CHARS, ALPHABET_BYTES or ALPHABET_CODE_POINTS
+	 * @param length - the number of characters, bytes or code points in the original file
+	 * @param code - the canonical code used to compress the file
+	 */
+	public FileHeader(int alphabet, long length, CanonicalCode code)
+	{
+		this.alphabet = alphabet;
+		this.length = length;
+		this.code = code;
+	}
+
+	/**
+	 * Gets the kind of symbols that were coded
+	 * @return ALPHABET_CHARS, ALPHABET_BYTES or ALPHABET_CODE_POINTS
+	 */
+	public int getAlphabet()
+	{
+		return alphabet;
+	}
+
+	/**
+	 * Gets the number of symbols in the original file
+	 * @return the number of symbols
+	 */
+	public long getLength()
+	{
+		return length;
+	}
+
+	/**
+	 * Gets the code used to compress the file
+	 * @return the canonical code
+	 */
+	public CanonicalCode getCode()
+	{
+		return code;
+	}
+
+	/**
+	 * Gets the number of bytes the header takes up in the file
+	 * @return the size of the header
+	 */
+	public int size()
+	{
+		return 14 + codeTableSize(code);
+	}
+
+	/**
+	 * Gets the largest number of bytes a header can take up
+	 * @param alphabetSize - one more than the largest symbol that can have a code
+	 * @return the size of the largest header
+	 */
+	public static int maxSize(int alphabetSize)
+	{
+		//The fixed fields, then a dense table with the longest varint and 6-bit lengths
+		int width = 32 - Integer.numberOfLeadingZeros(CanonicalCode.MAX_CODE_LENGTH);
+		return 14 + 5 + 4 + 1 + (int) (((long) alphabetSize * width + 7) / 8);
+	}
+
+	/**
+	 * Writes the header
+	 * @param out - the stream at the start of the compressed file
+	 * @throws IOException - file IO error
+	 */
+	public void write(DataOutputStream out) throws IOException
+	{
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		out.writeByte(alphabet);
+		out.writeLong(length);
+		writeCodeTable(out, code);
+	}
+
+	/**
+	 * Reads a header and rebuilds the code it describes
+	 * @param in - the stream at the start of the compressed file
+	 * @return the header
+	 * @throws IOException - file IO error, or the file is not a compressed file
+	 */
+	public static FileHeader read(DataInputStream in) throws IOException
+	{
+		if (in.readInt() != MAGIC)
+			throw new IOException("Not a compressed file");
+		int version = in.readUnsignedByte();
+		if (version < 1 || version > VERSION)
+			throw new IOException("Unsupported format version " + version);
+		int alphabet = (version == 1) ? ALPHABET_CHARS : in.readUnsignedByte();
+		if (alphabet != ALPHABET_CHARS && alphabet != ALPHABET_BYTES
+				&& (alphabet != ALPHABET_CODE_POINTS || version < 3))
+			throw new IOException("Unknown alphabet " + alphabet);
+
+		long length = in.readLong();
+		int alphabetSize = (alphabet == ALPHABET_CODE_POINTS) ? Character.MAX_CODE_POINT + 1 : Character.MAX_VALUE + 1;
+		CanonicalCode code = (version >= 4) ? readCodeTable(in, alphabetSize) : readOldCodeTable(in, alphabet, alphabetSize);
+		if (length < 0 || (code.size() == 0 && length > 0))
+			throw new IOException("Corrupt header");
+		return new FileHeader(alphabet, length, code);
+	}
+
+	/**
+	 * Writes the code length table of a code, in whichever layout is smaller
+	 * @param out - the stream the table is written to
+	 * @param code - the code
+	 * @throws IOException - file IO error
+	 */
+	public static void writeCodeTable(DataOutputStream out, CanonicalCode code) throws IOException
+	{
+		byte[] dense = denseTable(code);
+		byte[] sparse = sparseTable(code);
+		out.writeInt(code.size());
+		if (dense.length <= sparse.length)
+		{
+			out.writeByte(TABLE_DENSE);
+			out.write(dense);
+		}
+		else
+		{
+			out.writeByte(TABLE_SPARSE);
+			out.write(sparse);
+		}
+	}
+
+	/**
+	 * Gets the number of bytes writeCodeTable writes for a code
+	 * @param code - the code
+	 * @return the size of the table
+	 */
+	public static int codeTableSize(CanonicalCode code)
+	{
+		return 5 + Math.min(denseTable(code).length, sparseTable(code).length);
+	}
+
+	/**
+	 * Reads a code length table written by writeCodeTable and rebuilds the code
+	 * @param in - the stream at the start of the table
+	 * @param alphabetSize - one more than the largest symbol allowed
+	 * @return the code
+	 * @throws IOException - file IO error, or the table is corrupt
+	 */
+	public static CanonicalCode readCodeTable(DataInputStream in, int alphabetSize) throws IOException
+	{
+		int count = in.readInt();
+		int layout = in.readUnsignedByte();
+		if (count < 0 || count > alphabetSize || (layout != TABLE_DENSE && layout != TABLE_SPARSE))
+			throw new IOException("Corrupt code table");
+		int[] symbols = new int[count];
+		int[] lengths = new int[count];
+		if (layout == TABLE_SPARSE)
+			readSparseTable(in, symbols, lengths, alphabetSize);
+		else
+		{
+			int limit = readVarint(in);
+			int width = in.readUnsignedByte();
+			if (limit > alphabetSize || width > 6)
+				throw new IOException("Corrupt code table");
+			int[] table = new int[limit];
+			readPacked(in, table, width);
+			int k = 0;
+			for (int symbol = 0; symbol < limit; symbol++)
+			{
+				if (table[symbol] == 0)
+					continue;
+				if (k == count)
+					throw new IOException("Corrupt code table");
+				symbols[k] = symbol;
+				lengths[k++] = table[symbol];
+			}
+			if (k != count)
+				throw new IOException("Corrupt code table");
+		}
+		return buildCode(symbols, lengths);
+	}
+
+	/**
+	 * Reads the code table of a header written before version 4
+	 * @param in - the stream just after the original length
+	 * @param alphabet - the kind of symbols that were coded
+	 * @param alphabetSize - one more than the largest symbol allowed
+	 * @return the code
+	 * @throws IOException - file IO error, or the table is corrupt
+	 */
+	private static CanonicalCode readOldCodeTable(DataInputStream in, int alphabet, int alphabetSize) throws IOException
+	{
+		int count = in.readInt();
+		if (count < 0 || count > alphabetSize)
+			throw new IOException("Corrupt header");
+
+		int[] symbols = new int[count];
+		int[] lengths = new int[count];
+		if (alphabet == ALPHABET_CODE_POINTS)
+			readSparseTable(in, symbols, lengths, alphabetSize);
+		else
+		{
+			for (int i = 0; i < count; i++)
+			{
+				symbols[i] = in.readChar();
+				lengths[i] = in.readUnsignedByte();
+			}
+		}
+		return buildCode(symbols, lengths);
+	}
+
+	/**
+	 * Rebuilds a code from the symbols and lengths read from a table
+	 * @param symbols - the symbols
+	 * @param lengths - the code length of each symbol
+	 * @return the code
+	 * @throws IOException - the lengths do not describe a prefix code
+	 */
+	private static CanonicalCode buildCode(int[] symbols, int[] lengths) throws IOException
+	{
+		try
+		{
+			return new CanonicalCode(symbols, lengths);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Corrupt code table: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Lays out the dense table of a code
+	 * @param code - the code
+	 * @return the table, as it follows the layout byte
+	 */
+	private static byte[] denseTable(CanonicalCode code)
+	{
+		int limit = code.alphabetSize();
+		int maxLength = 0;
+		for (int i = 0; i < code.size(); i++)
+			maxLength = Math.max(maxLength, code.getLength(i));
+		int width = 32 - Integer.numberOfLeadingZeros(maxLength);
+
+		ByteArrayOutputStream table = new ByteArrayOutputStream(limit * width / 8 + 6);
+		writeVarint(table, limit);
+		table.write(width);
+		writePacked(table, code.getLengthTable(limit), width);
+		return table.toByteArray();
+	}
+
+	/**
+	 * Lays out the sparse table of a code
+	 * @param code - the code
+	 * @return the table, as it follows the layout byte
+	 */
+	private static byte[] sparseTable(CanonicalCode code)
+	{
+		int n = code.size();
+		long[] sorted = new long[n];
+		int minLength = CanonicalCode.MAX_CODE_LENGTH;
+		int maxLength = 0;
+		for (int i = 0; i < n; i++)
+		{
+			sorted[i] = ((long) code.getSymbol(i) << 8) | code.getLength(i);
+			minLength = Math.min(minLength, code.getLength(i));
+			maxLength = Math.max(maxLength, code.getLength(i));
+		}
+		Arrays.sort(sorted);
+		if (n == 0)
+			minLength = 0;
+		int width = 32 - Integer.numberOfLeadingZeros(maxLength - minLength);
+
+		ByteArrayOutputStream table = new ByteArrayOutputStream(2 * n + 2);
+		int[] spread = new int[n];
+		int previous = -1;
+		for (int i = 0; i < n; i++)
+		{
+			int symbol = (int) (sorted[i] >>> 8);
+			writeVarint(table, symbol - previous - 1);
+			spread[i] = (int) (sorted[i] & 0xFF) - minLength;
+			previous = symbol;
+		}
+		table.write(minLength);
+		table.write(width);
+		writePacked(table, spread, width);
+		return table.toByteArray();
+	}
+
+	/**
+	 * Reads the sparse table of a code
+	 * @param in - the stream just after the layout byte
+	 * @param symbols - receives the symbols, as many as it holds
+	 * @param lengths - receives the code length of each symbol
+	 * @param alphabetSize - one more than the largest symbol allowed
+	 * @throws IOException - file IO error, or the table is corrupt
+	 */
+	private static void readSparseTable(DataInputStream in, int[] symbols, int[] lengths, int alphabetSize) throws IOException
+	{
+		int previous = -1;
+		for (int i = 0; i < symbols.length; i++)
+		{
+			int gap = readVarint(in);
+			if (gap > alphabetSize - previous - 2)
+				throw new IOException("Corrupt code table");
+			symbols[i] = previous + 1 + gap;
+			previous = symbols[i];
+		}
+		int minLength = in.readUnsignedByte();
+		int width = in.readUnsignedByte();
+		if (width > 6)
+			throw new IOException("Corrupt code table");
+		readPacked(in, lengths, width);
+		for (int i = 0; i < lengths.length; i++)
+			lengths[i] += minLength;
+	}
+
+	/**
+	 * Writes a number that is not negative as a varint
+	 * @param out - the stream the number is written to
+	 * @param value - the number
+	 */
+	private static void writeVarint(ByteArrayOutputStream out, int value)
+	{
+		while (value >= 0x80)
+		{
+			out.write(0x80 | (value & 0x7F));
+			value >>>= 7;
+		}
+		out.write(value);
+	}
+
+	/**
+	 * Reads a varint of at most 28 bits
+	 * @param in - the stream the number is read from
+	 * @return the number
+	 * @throws IOException - file IO error, or the varint is too long
+	 */
+	private static int readVarint(DataInputStream in) throws IOException
+	{
+		int value = 0;
+		int shift = 0;
+		int b;
+		do
+		{
+			b = in.readUnsignedByte();
+			if (shift > 21)
+				throw new IOException("Corrupt code table");
+			value |= (b & 0x7F) << shift;
+			shift += 7;
+		}
+		while ((b & 0x80) != 0);
+		return value;
+	}
+
+	/**
+	 * Packs small numbers into a given number of bits each, high bits first,
+	 * padding the last byte with zeros
+	 * @param out - the stream the bits are written to
+	 * @param values - the numbers, each less than 2 to the power width
+	 * @param width - the number of bits per number, at most 56
+	 */
+	private static void writePacked(ByteArrayOutputStream out, int[] values, int width)
+	{
+		long bits = 0;
+		int count = 0;
+		for (int value : values)
+		{
+			bits = (bits << width) | value;
+			count += width;
+			while (count >= 8)
+			{
+				count -= 8;
+				out.write((int) (bits >>> count));
+			}
+		}
+		if (count > 0)
+			out.write((int) (bits << (8 - count)));
+	}
+
+	/**
+	 * Reads numbers written by writePacked
+	 * @param in - the stream the bits are read from
+	 * @param values - receives the numbers, as many as it holds
+	 * @param width - the number of bits per number, at most 56
+	 * @throws IOException - file IO error
+	 */
+	private static void readPacked(DataInputStream in, int[] values, int width) throws IOException
+	{
+		long bits = 0;
+		int count = 0;
+		for (int i = 0; i < values.length; i++)
+		{
+			while (count < width)
+			{
+				bits = (bits << 8) | in.readUnsignedByte();
+				count += 8;
+			}
+			count -= width;
+			values[i] = (int) ((bits >>> count) & ((1L << width) - 1));
+		}
+	}
+}
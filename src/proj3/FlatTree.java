@@ -0,0 +1,238 @@
+package proj3;
+
+/**
+ * Huffman tree flattened into one int array for decoding. Internal node i
+ * keeps its left child at child[2 * i] and its right child at child[2 * i + 1].
+ * A child entry is either the number of another internal node (zero or more),
+ * a leaf holding a symbol inline (~symbol, always negative), or MISSING.
+ * Node 0 is the root, and children always come after their parents.
+ *
+ * The tree can be built from a BinaryTree or straight from a canonical code,
+ * so decoding never has to follow BinaryNode references or look inside a
+ * CharacterMapping.
+ */
+public class FlatTree {
+
+	/**
+	 * Entry for a child that does not exist
+	 */
+	public static final int MISSING = Integer.MIN_VALUE;
+	/**
+	 * Entry for the root of a tree with at least one symbol
+	 */
+	public static final int ROOT = 0;
+
+	/**
+	 * The children of every internal node
+	 */
+	private int[] child;
+	/**
+	 * Height of the subtree under every internal node
+	 */
+	private int[] height;
+	/**
+	 * Number of internal nodes
+	 */
+	private int size;
+
+	/**
+	 * Constructor which flattens a Huffman tree. A tree holding a lone symbol
+	 * gets a root above it, so that the symbol has a one bit code.
+	 * @param huffTree - the Huffman tree
+	 */
+	public FlatTree(BinaryTree<CharacterMapping> huffTree)
+	{
+		child = new int[64];
+		BinaryNode<CharacterMapping> root = huffTree.getRoot();
+		if (null == root)
+			return;
+		if (isLeaf(root))
+		{
+			int node = allocate();
+			child[2 * node] = leaf(root.getElement().getCh().get(0));
+		}
+		else
+			flatten(root);
+		computeHeights();
+	}
+
+	/**
+	 * Constructor which builds the tree described by a canonical code
+	 * @param code - the canonical code
+	 * @throws IllegalArgumentException - the codes are not prefix free
+	 */
+	public FlatTree(CanonicalCode code)
+	{
+		child = new int[2 * Math.max(32, code.size())];
+		if (code.size() == 0)
+			return;
+		allocate();
+
+		for (int i = 0; i < code.size(); i++)
+		{
+			int node = ROOT;
+			long bits = code.getCode(i);
+			for (int bit = code.getLength(i) - 1; bit >= 0; bit--)
+			{
+				int slot = 2 * node + (int) ((bits >>> bit) & 1);
+				int entry = child[slot];
+				if (bit == 0)
+				{
+					if (entry != MISSING)
+						throw new IllegalArgumentException("Codes are not prefix free");
+					child[slot] = leaf(code.getSymbol(i));
+				}
+				else if (entry == MISSING)
+				{
+					node = allocate();
+					child[slot] = node;
+				}
+				else if (entry < 0)
+					throw new IllegalArgumentException("Codes are not prefix free");
+				else
+					node = entry;
+			}
+		}
+		computeHeights();
+	}
+
+	/**
+	 * Checks whether the tree holds no symbols
+	 * @return true if the tree is empty
+	 */
+	public boolean isEmpty()
+	{
+		return size == 0;
+	}
+
+	/**
+	 * Gets a child of an internal node
+	 * @param node - the internal node
+	 * @param bit - 0 for the left child, 1 for the right child
+	 * @return the child entry
+	 */
+	public int getChild(int node, int bit)
+	{
+		return child[2 * node + bit];
+	}
+
+	/**
+	 * Gets the height of the subtree under an entry
+	 * @param entry - an internal node, a leaf or MISSING
+	 * @return the length of the longest path to a leaf, 0 for a leaf, -1 for MISSING
+	 */
+	public int getHeight(int entry)
+	{
+		if (entry == MISSING)
+			return -1;
+		if (entry < 0)
+			return 0;
+		return height[entry];
+	}
+
+	/**
+	 * Gets the height of the whole tree
+	 * @return the longest code length, 0 for an empty tree
+	 */
+	public int height()
+	{
+		return isEmpty() ? 0 : height[ROOT];
+	}
+
+	/**
+	 * Checks whether an entry is a leaf
+	 * @param entry - a child entry
+	 * @return true if the entry holds a symbol
+	 */
+	public static boolean isLeaf(int entry)
+	{
+		return entry < 0 && entry != MISSING;
+	}
+
+	/**
+	 * Gets the symbol held by a leaf entry
+	 * @param entry - a leaf entry
+	 * @return the symbol
+	 */
+	public static int symbolOf(int entry)
+	{
+		return ~entry;
+	}
+
+	/**
+	 * Creates the entry for a leaf
+	 * @param symbol - the symbol held by the leaf
+	 * @return the leaf entry
+	 */
+	private static int leaf(int symbol)
+	{
+		return ~symbol;
+	}
+
+	/**
+	 * Recursively copies an internal node of a BinaryTree and everything below it
+	 * @param node - the internal node
+	 * @return the number of the node in the flat tree
+	 */
+	private int flatten(BinaryNode<CharacterMapping> node)
+	{
+		//The array may grow while the children are flattened, so store them afterwards
+		int flat = allocate();
+		int left = entryOf(node.getLeft());
+		int right = entryOf(node.getRight());
+		child[2 * flat] = left;
+		child[2 * flat + 1] = right;
+		return flat;
+	}
+
+	/**
+	 * Finds the entry for a child of a BinaryTree node, flattening it if it is internal
+	 * @param node - the child, or null
+	 * @return the child entry
+	 */
+	private int entryOf(BinaryNode<CharacterMapping> node)
+	{
+		if (null == node)
+			return MISSING;
+		if (isLeaf(node))
+			return leaf(node.getElement().getCh().get(0));
+		return flatten(node);
+	}
+
+	/**
+	 * Adds an internal node with no children
+	 * @return the number of the node
+	 */
+	private int allocate()
+	{
+		if (2 * size + 2 > child.length)
+		{
+			int[] newChild = new int[child.length * 2];
+			System.arraycopy(child, 0, newChild, 0, 2 * size);
+			child = newChild;
+		}
+		child[2 * size] = MISSING;
+		child[2 * size + 1] = MISSING;
+		return size++;
+	}
+
+	/**
+	 * Fills in the height of every internal node, children before parents
+	 */
+	private void computeHeights()
+	{
+		height = new int[size];
+		for (int node = size - 1; node >= 0; node--)
+			height[node] = 1 + Math.max(getHeight(child[2 * node]), getHeight(child[2 * node + 1]));
+	}
+
+	/**
+	 * Checks whether a node is a leaf of the tree
+	 * @param node - the node being looked at
+	 * @return true if the node has no children
+	 */
+	private static boolean isLeaf(BinaryNode<CharacterMapping> node)
+	{
+		return null == node.getLeft() && null == node.getRight();
+	}
+}
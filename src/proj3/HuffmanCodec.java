@@ -0,0 +1,405 @@
+package proj3;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Huffman encoder and decoder for the byte alphabet that works between
+ * ByteBuffers, heap or direct. The code and its tables are built once and
+ * never change, so one codec can be shared by any number of threads.
+ *
+ * Whatever a call needs besides the buffers lives in a Scratch, which holds
+ * the staging arrays bytes are copied through in bulk. A thread that keeps its
+ * own Scratch, or uses the calls without one, which keep one per thread,
+ * allocates nothing once warmed up.
+ *
+ * Layout of a message, big-endian:
+ *   int    number of bytes the message decodes to
+ *   the coded bits, ending with the end of file symbol and padded with zeros
+ *   to a whole byte
+ * The code itself is not part of the message; both sides must use the same
+ * codec, for instance by sending getCode() once in a FileHeader.
+ */
+public class HuffmanCodec {
+
+	/**
+	 * Longest code length a codec accepts, so that a code always fits in the
+	 * bits the decoder holds at once
+	 */
+	public static final int MAX_CODE_LENGTH = 56;
+	/**
+	 * Number of bytes before the coded bits
+	 */
+	private static final int HEADER_SIZE = 4;
+
+	/**
+	 * Working space for the calls of one thread at a time
+	 */
+	public static class Scratch
+	{
+		/**
+		 * Number of bytes staged at once
+		 */
+		private static final int SIZE = 1 << 14;
+
+		/**
+		 * Bytes copied in from the source buffer
+		 */
+		private byte[] in = new byte[SIZE];
+		/**
+		 * Bytes waiting to be copied to the destination buffer
+		 */
+		private byte[] out = new byte[SIZE];
+		/**
+		 * View of out for writing whole words of bits
+		 */
+		private ByteBuffer words = ByteBuffer.wrap(out);
+	}
+
+	/**
+	 * Scratch space of each thread, for the calls made without one
+	 */
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	/**
+	 * The code
+	 */
+	private final CanonicalCode code;
+	/**
+	 * Codes as bits, indexed by symbol
+	 */
+	private final long[] codeBits;
+	/**
+	 * Code lengths, indexed by symbol; 0 for bytes with no code
+	 */
+	private final int[] codeLengths;
+	/**
+	 * Longest code length
+	 */
+	private final int longest;
+	/**
+	 * Table for decoding
+	 */
+	private final DecodeTable table;
+
+	/**
+	 * Constructor which builds the tables for a code
+	 * @param code - a code over the byte alphabet that includes the end of file symbol
+	 * @throws IllegalArgumentException - the code lacks the end of file symbol, has
+	 *                                    symbols outside the byte alphabet, or has codes
+	 *                                    longer than MAX_CODE_LENGTH
+	 */
+	public HuffmanCodec(CanonicalCode code)
+	{
+		if (code.alphabetSize() > Proj3.EOF_SYMBOL + 1)
+			throw new IllegalArgumentException("The code has symbols outside the byte alphabet");
+		this.code = code;
+		this.codeBits = code.getCodeTable(Proj3.EOF_SYMBOL + 1);
+		this.codeLengths = code.getLengthTable(Proj3.EOF_SYMBOL + 1);
+		if (codeLengths[Proj3.EOF_SYMBOL] == 0)
+			throw new IllegalArgumentException("The code lacks the end of file symbol");
+		int deepest = 0;
+		for (int len : codeLengths)
+			deepest = Math.max(deepest, len);
+		if (deepest > MAX_CODE_LENGTH)
+			throw new IllegalArgumentException("Codes longer than " + MAX_CODE_LENGTH + " bits");
+		this.longest = deepest;
+		this.table = new DecodeTable(code);
+	}
+
+	/**
+	 * Builds a codec for byte counts. Bytes with a count of zero get no code
+	 * and cannot be encoded.
+	 * @param byteCounts - the number of occurrences of each byte, indexed by byte value
+	 * @param maxLength - the longest code length allowed, at most MAX_CODE_LENGTH
+	 * @return the codec
+	 */
+	public static HuffmanCodec forCounts(long[] byteCounts, int maxLength)
+	{
+		if (maxLength < 1 || maxLength > MAX_CODE_LENGTH)
+			throw new IllegalArgumentException("Bad maximum code length " + maxLength);
+		long[] counts = new long[Proj3.EOF_SYMBOL + 1];
+		System.arraycopy(byteCounts, 0, counts, 0, Math.min(byteCounts.length, Proj3.EOF_SYMBOL));
+		counts[Proj3.EOF_SYMBOL] = 1;
+		return new HuffmanCodec(Proj3.createCanonicalCode(counts, maxLength));
+	}
+
+	/**
+	 * Builds a codec for the bytes remaining in a sample, without moving its position
+	 * @param sample - the sample
+	 * @return the codec
+	 */
+	public static HuffmanCodec forSample(ByteBuffer sample)
+	{
+		long[] counts = new long[256];
+		for (int i = sample.position(); i < sample.limit(); i++)
+			counts[sample.get(i) & 0xFF]++;
+		return forCounts(counts, MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * Gets the code, for sending to the other side or for storing
+	 * @return the code
+	 */
+	public CanonicalCode getCode()
+	{
+		return code;
+	}
+
+	/**
+	 * Gets the largest size of a message for a given number of bytes
+	 * @param length - the number of bytes to encode
+	 * @return the largest number of bytes encode writes for them
+	 */
+	public int maxEncodedLength(int length)
+	{
+		long bits = ((long) length + 1) * longest;
+		return (int) Math.min(Integer.MAX_VALUE, HEADER_SIZE + (bits + 7) / 8);
+	}
+
+	/**
+	 * Reads the number of bytes a message decodes to, without moving the buffer's position
+	 * @param src - the buffer, positioned at the start of a message
+	 * @return the number of bytes
+	 * @throws BufferUnderflowException - the buffer holds less than the length
+	 */
+	public static int decodedLength(ByteBuffer src)
+	{
+		if (src.remaining() < HEADER_SIZE)
+			throw new BufferUnderflowException();
+		int p = src.position();
+		return ((src.get(p) & 0xFF) << 24) | ((src.get(p + 1) & 0xFF) << 16) | ((src.get(p + 2) & 0xFF) << 8) | (src.get(p + 3) & 0xFF);
+	}
+
+	/**
+	 * Encodes the remaining bytes of src into dst as one message, with this thread's scratch space
+	 * @param src - the bytes to encode; its position ends at its limit
+	 * @param dst - receives the message from its position on
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException - dst has too little room; neither position moves
+	 * @throws IllegalArgumentException - a byte has no code; neither position moves
+	 */
+	public int encode(ByteBuffer src, ByteBuffer dst)
+	{
+		return encode(src, dst, SCRATCH.get());
+	}
+
+	/**
+	 * Encodes the remaining bytes of src into dst as one message
+	 * @param src - the bytes to encode; its position ends at its limit
+	 * @param dst - receives the message from its position on
+	 * @param scratch - working space, used by one thread at a time
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException - dst has too little room; neither position moves
+	 * @throws IllegalArgumentException - a byte has no code; neither position moves
+	 */
+	public int encode(ByteBuffer src, ByteBuffer dst, Scratch scratch)
+	{
+		int srcStart = src.position();
+		int dstStart = dst.position();
+		try
+		{
+			return encodeMessage(src, dst, scratch);
+		}
+		catch (RuntimeException e)
+		{
+			src.position(srcStart);
+			dst.position(dstStart);
+			throw e;
+		}
+	}
+
+	/**
+	 * Decodes one message from src into dst, with this thread's scratch space
+	 * @param src - the message; its position ends just after it
+	 * @param dst - receives the bytes from its position on
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException - dst has too little room; neither position moves
+	 * @throws IllegalArgumentException - the message is truncated or corrupt; neither position moves
+	 */
+	public int decode(ByteBuffer src, ByteBuffer dst)
+	{
+		return decode(src, dst, SCRATCH.get());
+	}
+
+	/**
+	 * Decodes one message from src into dst
+	 * @param src - the message; its position ends just after it
+	 * @param dst - receives the bytes from its position on
+	 * @param scratch - working space, used by one thread at a time
+	 * @return the number of bytes written
+	 * @throws BufferOverflowException - dst has too little room; neither position moves
+	 * @throws IllegalArgumentException - the message is truncated or corrupt; neither position moves
+	 */
+	public int decode(ByteBuffer src, ByteBuffer dst, Scratch scratch)
+	{
+		int length = decodedLength(src);
+		if (length < 0)
+			throw new IllegalArgumentException("Corrupt message length " + length);
+		if (dst.remaining() < length)
+			throw new BufferOverflowException();
+		int srcStart = src.position();
+		int dstStart = dst.position();
+		try
+		{
+			src.position(srcStart + HEADER_SIZE);
+			decodeMessage(src, dst, length, scratch);
+			return length;
+		}
+		catch (RuntimeException e)
+		{
+			src.position(srcStart);
+			dst.position(dstStart);
+			throw e;
+		}
+	}
+
+	/**
+	 * Encodes the remaining bytes of src, staging the input and the output
+	 * through the scratch arrays so that direct buffers are copied in bulk
+	 * @param src - the bytes to encode
+	 * @param dst - receives the message
+	 * @param scratch - working space
+	 * @return the number of bytes written
+	 */
+	private int encodeMessage(ByteBuffer src, ByteBuffer dst, Scratch scratch)
+	{
+		int start = dst.position();
+		if (dst.remaining() < HEADER_SIZE)
+			throw new BufferOverflowException();
+		int length = src.remaining();
+		dst.put((byte) (length >>> 24)).put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length);
+
+		byte[] in = scratch.in;
+		byte[] out = scratch.out;
+		ByteBuffer words = scratch.words;
+		int pos = 0;
+		long bits = 0; //pending bits, left aligned
+		int count = 0;
+		while (src.hasRemaining())
+		{
+			int n = Math.min(in.length, src.remaining());
+			src.get(in, 0, n);
+			for (int i = 0; i < n; i++)
+			{
+				int key = in[i] & 0xFF;
+				int len = codeLengths[key];
+				if (len == 0)
+					throw new IllegalArgumentException("Byte " + key + " has no code");
+				long code = codeBits[key];
+				int free = 64 - count;
+				if (len < free)
+				{
+					bits |= code << (free - len);
+					count += len;
+					continue;
+				}
+				//Fill up the accumulator, stage it and keep the leftover bits
+				int rest = len - free;
+				words.putLong(pos, bits | (code >>> rest));
+				pos += 8;
+				bits = (rest == 0) ? 0 : code << (64 - rest);
+				count = rest;
+				if (pos > out.length - 8)
+				{
+					dst.put(out, 0, pos);
+					pos = 0;
+				}
+			}
+		}
+
+		//End of file symbol, then the last partial word
+		int len = codeLengths[Proj3.EOF_SYMBOL];
+		long code = codeBits[Proj3.EOF_SYMBOL];
+		int free = 64 - count;
+		if (len >= free)
+		{
+			int rest = len - free;
+			words.putLong(pos, bits | (code >>> rest));
+			pos += 8;
+			bits = (rest == 0) ? 0 : code << (64 - rest);
+			count = rest;
+		}
+		else
+		{
+			bits |= code << (free - len);
+			count += len;
+		}
+		if (pos > out.length - 8)
+		{
+			dst.put(out, 0, pos);
+			pos = 0;
+		}
+		while (count > 0)
+		{
+			out[pos++] = (byte) (bits >>> 56);
+			bits <<= 8;
+			count -= 8;
+		}
+		dst.put(out, 0, pos);
+		return dst.position() - start;
+	}
+
+	/**
+	 * Decodes the coded bits of a message whose length has been read
+	 * @param src - the coded bits
+	 * @param dst - receives the bytes; has room for all of them
+	 * @param length - the number of bytes to decode
+	 * @param scratch - working space
+	 */
+	private void decodeMessage(ByteBuffer src, ByteBuffer dst, int length, Scratch scratch)
+	{
+		int start = src.position();
+		byte[] in = scratch.in;
+		byte[] out = scratch.out;
+		int inPos = 0;
+		int inEnd = 0;
+		long loaded = 0; //bytes moved into the accumulator
+		int outPos = 0;
+		long bits = 0; //the lowest count bits are the next bits, oldest first
+		int count = 0;
+		for (int i = 0; i <= length; i++)
+		{
+			if (count <= 56)
+			{
+				while (count <= 56)
+				{
+					if (inPos == inEnd)
+					{
+						inEnd = Math.min(in.length, src.remaining());
+						if (inEnd == 0)
+							break;
+						src.get(in, 0, inEnd);
+						inPos = 0;
+					}
+					bits = (bits << 8) | (in[inPos++] & 0xFF);
+					count += 8;
+					loaded++;
+				}
+			}
+			int entry = table.decode(bits, count);
+			if (entry == -1)
+				throw new IllegalArgumentException("Message is truncated or corrupt");
+			count -= entry & 0xFF;
+			int symbol = entry >>> 8;
+			if (i == length)
+			{
+				if (symbol != Proj3.EOF_SYMBOL)
+					throw new IllegalArgumentException("Message is missing its end of file symbol");
+				break;
+			}
+			if (symbol == Proj3.EOF_SYMBOL)
+				throw new IllegalArgumentException("Message is shorter than its length");
+			if (outPos == out.length)
+			{
+				dst.put(out, 0, outPos);
+				outPos = 0;
+			}
+			out[outPos++] = (byte) symbol;
+		}
+		dst.put(out, 0, outPos);
+		//Leave src just after the padding of the last byte
+		src.position((int) (start + loaded - count / 8));
+	}
+}
@@ -0,0 +1,203 @@
+package proj3;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Input stream that decompresses data written by a HuffmanOutputStream or a
+ * BlockCompressor, one frame at a time.
+ *
+ * Nothing is read from the underlying stream until the first read, and no
+ * more is read than the frame being decoded, so a frame can be used as soon as
+ * it arrives, for instance right after the other end flushed. The end of the
+ * data, with its index if there is one, is read in full, so that another
+ * message may follow on the same stream. Only one frame is held in memory,
+ * and the buffers holding it are kept from frame to frame; the coded bits are
+ * read straight from the compressed frame and decoded straight into the
+ * decoded one. Only the decoding table is built for each frame, since each
+ * frame has its own code, unless a code cache already holds it.
+ */
+public class HuffmanInputStream extends InputStream {
+
+	/**
+	 * The underlying stream
+	 */
+	private DataInputStream data;
+	/**
+	 * Format version read from the header, 0 until the header has been read
+	 */
+	private int version;
+	/**
+	 * Largest number of bytes in a frame
+	 */
+	private int frameSize;
+	/**
+	 * The compressed frame being decoded
+	 */
+	private byte[] compressed = new byte[0];
+	/**
+	 * The decoded frame
+	 */
+	private byte[] decoded = new byte[0];
+	/**
+	 * Number of bytes of the decoded frame
+	 */
+	private int limit;
+	/**
+	 * Position of the next byte to hand out from the decoded frame
+	 */
+	private int pos;
+	/**
+	 * Number of frames read
+	 */
+	private int frames;
+	/**
+	 * Whether the end of the data has been read
+	 */
+	private boolean ended;
+
+	/**
+	 * Constructor which wraps a stream of compressed data
+	 * @param in - the compressed data
+	 */
+	public HuffmanInputStream(InputStream in)
+	{
+		this.data = new DataInputStream(in);
+	}
+
+	/**
+	 * Reads one byte
+	 * @return the byte, or -1 at the end of the data
+	 * @throws IOException - IO error, or the data is corrupt
+	 */
+	public int read() throws IOException
+	{
+		if (!fill())
+			return -1;
+		return decoded[pos++] & 0xFF;
+	}
+
+	/**
+	 * Reads up to len bytes, returning as soon as some are available
+	 * @param b - receives the bytes
+	 * @param off - where the first byte goes
+	 * @param len - the largest number of bytes to read
+	 * @return the number of bytes read, or -1 at the end of the data
+	 * @throws IOException - IO error, or the data is corrupt
+	 */
+	public int read(byte[] b, int off, int len) throws IOException
+	{
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		if (len == 0)
+			return 0;
+		if (!fill())
+			return -1;
+		int n = Math.min(len, limit - pos);
+		System.arraycopy(decoded, pos, b, off, n);
+		pos += n;
+		return n;
+	}
+
+	/**
+	 * Gets the number of bytes that can be read without decoding another frame
+	 * @return the number of bytes left in the decoded frame
+	 */
+	public int available()
+	{
+		return limit - pos;
+	}
+
+	/**
+	 * Closes the underlying stream
+	 * @throws IOException - IO error
+	 */
+	public void close() throws IOException
+	{
+		data.close();
+	}
+
+	/**
+	 * Makes sure there are decoded bytes to hand out, decoding the next frame if need be
+	 * @return false at the end of the data
+	 * @throws IOException - IO error, or the data is corrupt
+	 */
+	private boolean fill() throws IOException
+	{
+		while (pos == limit)
+		{
+			if (ended)
+				return false;
+			if (version == 0)
+				readHeader();
+			int length = data.readInt();
+			if (length == 0)
+			{
+				readEnd();
+				return false;
+			}
+			//A frame holds its header and at most MAX_CODE_LENGTH bits per byte and end of file
+			long longest = FileHeader.maxSize(Proj3.EOF_SYMBOL + 1) + ((frameSize + 1L) * CanonicalCode.MAX_CODE_LENGTH + 7) / 8;
+			if (length < 0 || length > longest)
+				throw new IOException("Corrupt frame length " + length);
+			if (compressed.length < length)
+				compressed = new byte[length];
+			data.readFully(compressed, 0, length);
+
+			ByteArrayInputStream in = new ByteArrayInputStream(compressed, 0, length);
+			FileHeader header = BlockCompressor.readFrameHeader(in);
+			if (header.getLength() > frameSize)
+				throw new IOException("Frame is larger than the frame size");
+			if (decoded.length < header.getLength())
+				decoded = new byte[(int) header.getLength()];
+			Proj3.decodeBytes(header, new BitInput(compressed, length - in.available(), in.available()), decoded);
+			limit = (int) header.getLength();
+			pos = 0;
+			frames++;
+		}
+		return true;
+	}
+
+	/**
+	 * Reads the header of the compressed data
+	 * @throws IOException - IO error, or the data is not compressed blocks
+	 */
+	private void readHeader() throws IOException
+	{
+		if (data.readInt() != BlockCompressor.MAGIC)
+			throw new IOException("Not a stream of compressed blocks");
+		int v = data.readUnsignedByte();
+		if (v < 1 || v > BlockCompressor.VERSION)
+			throw new IOException("Unsupported format version " + v);
+		frameSize = data.readInt();
+		if (frameSize < 1)
+			throw new IOException("Corrupt frame size " + frameSize);
+		version = v;
+	}
+
+	/**
+	 * Reads the index that follows the last frame, if the format has one, and checks its count
+	 * @throws IOException - IO error, or the index does not match the frames read
+	 */
+	private void readEnd() throws IOException
+	{
+		ended = true;
+		if (version < 2)
+			return;
+		try
+		{
+			data.skipNBytes(16L * frames);
+			int count = data.readInt();
+			data.readLong();
+			if (count != frames || data.readInt() != BlockIndex.MAGIC)
+				throw new IOException("Block index does not match the frames");
+		}
+		catch (EOFException e)
+		{
+			throw new IOException("Compressed stream ends inside its index");
+		}
+	}
+}
@@ -0,0 +1,160 @@
+package proj3;
+
+import java.util.Arrays;
+
+/**
+ * Builds Huffman code lengths straight from a table of symbol counts, working
+ * only on primitive arrays. The symbols are sorted by count once; after that
+ * the tree is built in linear time with two queues: one holding the leaves in
+ * sorted order, the other holding the merged nodes, which are created in
+ * order of weight and so never need sorting. No symbol lists are copied.
+ *
+ * When the counts are too large to sort as packed keys, the tree is built
+ * by repeatedly merging the two lightest nodes of a DaryHeap instead.
+ */
+public class HuffmanLengths {
+
+	/**
+	 * Number of children of each node of the heap used by buildWithHeap
+	 */
+	public static final int HEAP_ARITY = 4;
+
+	/**
+	 * Finds the Huffman code length of every symbol
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @return the code length of each symbol, 0 for symbols that do not occur
+	 */
+	public static int[] build(long[] counts)
+	{
+		int[] symbols = sortedSymbols(counts);
+		if (null == symbols)
+			return buildWithHeap(counts, HEAP_ARITY);
+		int[] lengths = new int[counts.length];
+		int n = symbols.length;
+		if (n == 0)
+			return lengths;
+		if (n == 1) //A lone symbol still needs one bit
+		{
+			lengths[symbols[0]] = 1;
+			return lengths;
+		}
+
+		//Nodes 0 to n - 1 are the leaves, n and up the merged nodes in order of creation
+		long[] weight = new long[2 * n - 1];
+		int[] parent = new int[2 * n - 1];
+		for (int i = 0; i < n; i++)
+			weight[i] = counts[symbols[i]];
+
+		int leaf = 0; //head of the leaf queue
+		int merged = n; //head of the merged queue
+		for (int next = n; next < 2 * n - 1; next++)
+		{
+			int a = (leaf < n && (merged == next || weight[leaf] <= weight[merged])) ? leaf++ : merged++;
+			int b = (leaf < n && (merged == next || weight[leaf] <= weight[merged])) ? leaf++ : merged++;
+			weight[next] = weight[a] + weight[b];
+			parent[a] = next;
+			parent[b] = next;
+		}
+
+		//Parents come after their children, so depths can be filled in from the root down
+		int[] depth = new int[2 * n - 1];
+		for (int i = 2 * n - 3; i >= 0; i--)
+			depth[i] = depth[parent[i]] + 1;
+		for (int i = 0; i < n; i++)
+			lengths[symbols[i]] = depth[i];
+		return lengths;
+	}
+
+	/**
+	 * Finds the Huffman code length of every symbol by merging the two lightest
+	 * nodes of a heap until one is left
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @param arity - the number of children of each heap node: 2, 4 or 8
+	 * @return the code length of each symbol, 0 for symbols that do not occur
+	 */
+	public static int[] buildWithHeap(long[] counts, int arity)
+	{
+		int[] lengths = new int[counts.length];
+		int n = 0;
+		for (long count : counts)
+			if (count > 0)
+				n++;
+		if (n == 0)
+			return lengths;
+
+		//Nodes 0 to n - 1 are the leaves in order of symbol, n and up the merged nodes
+		int[] symbols = new int[n];
+		long[] weight = new long[Math.max(1, 2 * n - 1)];
+		int[] node = new int[n];
+		int k = 0;
+		for (int s = 0; s < counts.length; s++)
+		{
+			if (counts[s] == 0)
+				continue;
+			symbols[k] = s;
+			weight[k] = counts[s];
+			node[k] = k;
+			k++;
+		}
+		if (n == 1) //A lone symbol still needs one bit
+		{
+			lengths[symbols[0]] = 1;
+			return lengths;
+		}
+
+		DaryHeap heap = new DaryHeap(arity, n);
+		heap.heapify(weight, node, n);
+		int[] parent = new int[2 * n - 1];
+		for (int next = n; next < 2 * n - 1; next++)
+		{
+			int a = heap.remove();
+			int b = heap.remove();
+			weight[next] = weight[a] + weight[b];
+			parent[a] = next;
+			parent[b] = next;
+			heap.add(weight[next], next);
+		}
+
+		int[] depth = new int[2 * n - 1];
+		for (int i = 2 * n - 3; i >= 0; i--)
+			depth[i] = depth[parent[i]] + 1;
+		for (int i = 0; i < n; i++)
+			lengths[symbols[i]] = depth[i];
+		return lengths;
+	}
+
+	/**
+	 * Lists the symbols that occur, from the least to the most frequent, ties
+	 * broken by symbol. When the counts leave room, each count and symbol are
+	 * packed into one long so that a primitive sort does the work.
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @return the symbols that occur, in order, or null if the counts are too large to pack
+	 */
+	private static int[] sortedSymbols(long[] counts)
+	{
+		int n = 0;
+		long largest = 0;
+		for (long count : counts)
+		{
+			if (count > 0)
+				n++;
+			largest = Math.max(largest, count);
+		}
+
+		int symbolBits = 32 - Integer.numberOfLeadingZeros(Math.max(1, counts.length - 1));
+		if (largest >= (1L << (63 - symbolBits)))
+			return null;
+
+		int[] symbols = new int[n];
+		long[] keys = new long[n];
+		int k = 0;
+		for (int s = 0; s < counts.length; s++)
+			if (counts[s] > 0)
+				keys[k++] = (counts[s] << symbolBits) | s;
+		Arrays.sort(keys);
+		long mask = (1L << symbolBits) - 1;
+		for (int i = 0; i < n; i++)
+			symbols[i] = (int) (keys[i] & mask);
+		return symbols;
+	}
+}
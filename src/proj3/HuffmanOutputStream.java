@@ -0,0 +1,221 @@
+package proj3;
+
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream that compresses everything written to it, in frames of up to
+ * a fixed number of bytes, each with its own code. What is written is the
+ * layout of BlockCompressor, so the result can be read back with a
+ * HuffmanInputStream or decompressed like any file of compressed blocks.
+ *
+ * Only one frame is held in memory. flush() compresses the bytes held so far
+ * as a short frame and flushes the underlying stream, so the other end can
+ * decode everything written before the flush without waiting for more.
+ * finish() ends the data without closing the underlying stream.
+ *
+ * An indexed stream ends with the BlockIndex footer, which lets a range be
+ * extracted from a file later but keeps 16 bytes per frame in memory until
+ * the end. A stream that is never finished, such as a long lived socket,
+ * should not be indexed.
+ */
+public class HuffmanOutputStream extends FilterOutputStream {
+
+	/**
+	 * Default number of bytes in a frame
+	 */
+	public static final int DEFAULT_FRAME_SIZE = 1 << 16;
+
+	/**
+	 * The underlying stream
+	 */
+	private DataOutputStream data;
+	/**
+	 * Bytes waiting to be compressed
+	 */
+	private byte[] frame;
+	/**
+	 * Number of bytes of frame in use
+	 */
+	private int count;
+	/**
+	 * Number of bytes written to the underlying stream
+	 */
+	private long position;
+	/**
+	 * Where each frame was written, or null if the stream is not indexed
+	 */
+	private BlockIndex index;
+	/**
+	 * Longest code length allowed in a frame's code
+	 */
+	private int maxCodeLength = CanonicalCode.MAX_CODE_LENGTH;
+	/**
+	 * Cache of codes shared by the frames, or null
+	 */
+	private CodeCache cache;
+	/**
+	 * Whether finish has been called
+	 */
+	private boolean finished;
+
+	/**
+	 * Constructor for an indexed stream with the default frame size
+	 * @param out - receives the compressed data
+	 * @throws IOException - IO error writing the header
+	 */
+	public HuffmanOutputStream(OutputStream out) throws IOException
+	{
+		this(out, DEFAULT_FRAME_SIZE, true);
+	}
+
+	/**
+	 * Constructor which writes the header
+	 * @param out - receives the compressed data
+	 * @param frameSize - the largest number of bytes in a frame
+	 * @param indexed - true to end the stream with an index of the frames
+	 * @throws IOException - IO error writing the header
+	 */
+	public HuffmanOutputStream(OutputStream out, int frameSize, boolean indexed) throws IOException
+	{
+		super(out);
+		if (frameSize < 1)
+			throw new IllegalArgumentException("frame size must be positive");
+		this.data = new DataOutputStream(out);
+		this.frame = new byte[frameSize];
+		this.index = indexed ? new BlockIndex() : null;
+		data.writeInt(BlockCompressor.MAGIC);
+		data.writeByte(indexed ? BlockCompressor.VERSION : 1);
+		data.writeInt(frameSize);
+		position = BlockCompressor.HEADER_SIZE;
+	}
+
+	/**
+	 * Limits the length of the codes of every frame
+	 * @param maxLength - the longest code length allowed
+	 */
+	public void setMaxCodeLength(int maxLength)
+	{
+		if (maxLength < 1 || maxLength > CanonicalCode.MAX_CODE_LENGTH)
+			throw new IllegalArgumentException("Bad maximum code length " + maxLength);
+		maxCodeLength = maxLength;
+	}
+
+	/**
+	 * Lets frames with similar contents share codes
+	 * @param cache - the cache of codes, or null to build a code for every frame
+	 */
+	public void setCodeCache(CodeCache cache)
+	{
+		this.cache = cache;
+	}
+
+	/**
+	 * Writes one byte
+	 * @param b - the byte, in the low 8 bits
+	 * @throws IOException - IO error, or the stream is finished
+	 */
+	public void write(int b) throws IOException
+	{
+		ensureOpen();
+		frame[count++] = (byte) b;
+		if (count == frame.length)
+			writeFrame();
+	}
+
+	/**
+	 * Writes part of an array
+	 * @param b - the bytes
+	 * @param off - the first byte to write
+	 * @param len - the number of bytes to write
+	 * @throws IOException - IO error, or the stream is finished
+	 */
+	public void write(byte[] b, int off, int len) throws IOException
+	{
+		ensureOpen();
+		if (off < 0 || len < 0 || len > b.length - off)
+			throw new IndexOutOfBoundsException();
+		while (len > 0)
+		{
+			int n = Math.min(len, frame.length - count);
+			System.arraycopy(b, off, frame, count, n);
+			count += n;
+			off += n;
+			len -= n;
+			if (count == frame.length)
+				writeFrame();
+		}
+	}
+
+	/**
+	 * Compresses the bytes held so far as a frame and flushes the underlying stream
+	 * @throws IOException - IO error
+	 */
+	public void flush() throws IOException
+	{
+		if (count > 0)
+			writeFrame();
+		data.flush();
+	}
+
+	/**
+	 * Writes the last frame and the end of the data, and the index if there is
+	 * one, without closing the underlying stream
+	 * @throws IOException - IO error
+	 */
+	public void finish() throws IOException
+	{
+		if (finished)
+			return;
+		if (count > 0)
+			writeFrame();
+		data.writeInt(0);
+		if (null != index)
+			index.write(data, position + 4);
+		data.flush();
+		finished = true;
+	}
+
+	/**
+	 * Finishes the data and closes the underlying stream
+	 * @throws IOException - IO error
+	 */
+	public void close() throws IOException
+	{
+		try
+		{
+			finish();
+		}
+		finally
+		{
+			data.close();
+		}
+	}
+
+	/**
+	 * Compresses the bytes held and writes them as one frame
+	 * @throws IOException - IO error
+	 */
+	private void writeFrame() throws IOException
+	{
+		byte[] compressed = BlockCompressor.compressBlock(frame, count, maxCodeLength, cache);
+		data.writeInt(compressed.length);
+		if (null != index)
+			index.add(position + 4, compressed.length, count);
+		data.write(compressed);
+		position += 4 + compressed.length;
+		count = 0;
+	}
+
+	/**
+	 * Checks that the data has not been finished
+	 * @throws IOException - the stream is finished
+	 */
+	private void ensureOpen() throws IOException
+	{
+		if (finished)
+			throw new IOException("Stream is finished");
+	}
+}
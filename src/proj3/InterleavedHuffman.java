@@ -0,0 +1,352 @@
+package proj3;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Compresses bytes in blocks whose data is split into four bitstreams sharing
+ * one code, so that the decoder can work on all four at once. With a single
+ * stream every lookup has to wait for the one before it to know where the next
+ * code starts; with four independent streams the processor can overlap four
+ * lookups.
+ *
+ * The block is cut into four quarters and each quarter is coded into its own
+ * stream. Codes are at most TABLE_BITS long, so one lookup in a flat table
+ * always resolves a whole code. The decoder loads a 64 bit window from each
+ * stream, then decodes SYMBOLS_PER_LOAD symbols from each window in turn,
+ * round robin, before loading again.
+ *
+ * Layout, big-endian:
+ *   int    magic number "HUF4"
+ *   byte   format version
+ *   int    block size
+ *   then for each block, in order:
+ *   int    number of bytes in the block
+ *   int    length of the rest of the frame
+ *   bytes  the code length of each of the 256 byte values, 4 bits each, the
+ *          even value in the high bits, 0 for values without a code
+ *   int    length of each of the first three streams
+ *   bytes  the four streams, each padded to a byte
+ *   and finally:
+ *   int    0
+ */
+public class InterleavedHuffman {
+
+	/**
+	 * Magic number identifying a file of interleaved streams
+	 */
+	public static final int MAGIC = 0x48554634;
+	/**
+	 * Current format version
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * Number of streams in a block
+	 */
+	public static final int STREAMS = 4;
+	/**
+	 * Longest code length, and the number of bits indexing the decoding table
+	 */
+	public static final int TABLE_BITS = 11;
+	/**
+	 * Largest number of bytes in a block, which keeps every bit position in an int
+	 */
+	public static final int MAX_BLOCK_SIZE = 1 << 26;
+	/**
+	 * Number of symbols decoded from a window before it is loaded again. A
+	 * window holds at least 57 bits after it is aligned to a byte.
+	 */
+	private static final int SYMBOLS_PER_LOAD = 57 / TABLE_BITS;
+	/**
+	 * Bytes a frame is padded with, so a window can always be loaded in one read
+	 */
+	private static final int PADDING = 8;
+	/**
+	 * Number of bytes of packed code lengths in a frame
+	 */
+	private static final int TABLE_SIZE = 128;
+
+	/**
+	 * Reads 8 bytes of an array at once, as a big-endian long
+	 */
+	private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.BIG_ENDIAN);
+
+	/**
+	 * Compresses a stream
+	 * @param in - the data
+	 * @param out - receives the compressed data
+	 * @param blockSize - the number of bytes in a block
+	 * @return the number of bytes compressed
+	 * @throws IOException - IO error
+	 */
+	public static long compress(InputStream in, OutputStream out, int blockSize) throws IOException
+	{
+		if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE)
+			throw new IllegalArgumentException("Block size must be from 1 to " + MAX_BLOCK_SIZE);
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeInt(blockSize);
+
+		byte[] block = new byte[blockSize];
+		long total = 0;
+		int n = in.readNBytes(block, 0, blockSize);
+		while (n > 0)
+		{
+			byte[] frame = compressBlock(block, n);
+			data.writeInt(n);
+			data.writeInt(frame.length);
+			data.write(frame);
+			total += n;
+			n = in.readNBytes(block, 0, blockSize);
+		}
+		data.writeInt(0);
+		data.flush();
+		return total;
+	}
+
+	/**
+	 * Decompresses data written by compress
+	 * @param in - the compressed data
+	 * @param out - receives the original data
+	 * @throws IOException - IO error, or the data is corrupt
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not a file of interleaved streams");
+		int version = data.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported format version " + version);
+		int blockSize = data.readInt();
+		if (blockSize < 1 || blockSize > MAX_BLOCK_SIZE)
+			throw new IOException("Corrupt block size " + blockSize);
+
+		byte[] frame = new byte[0];
+		byte[] block = new byte[0];
+		int n = data.readInt();
+		while (n != 0)
+		{
+			int length = data.readInt();
+			//A code is at most TABLE_BITS bits, and each stream wastes less than a byte
+			if (n < 0 || n > blockSize || length < TABLE_SIZE + 12 || length > TABLE_SIZE + 12 + STREAMS + (int) ((long) n * TABLE_BITS / 8))
+				throw new IOException("Corrupt frame");
+			if (frame.length < length + PADDING)
+				frame = new byte[length + PADDING];
+			if (block.length < n)
+				block = new byte[n];
+			data.readFully(frame, 0, length);
+			decompressBlock(frame, length, block, n);
+			out.write(block, 0, n);
+			n = data.readInt();
+		}
+		out.flush();
+	}
+
+	/**
+	 * Compresses one block into a frame
+	 * @param block - the bytes
+	 * @param len - the number of bytes of block to compress, at least 1
+	 * @return the frame, without the two lengths that go before it
+	 * @throws IOException - not thrown when writing to memory
+	 */
+	public static byte[] compressBlock(byte[] block, int len) throws IOException
+	{
+		long[] counts = new long[256];
+		for (int i = 0; i < len; i++)
+			counts[block[i] & 0xFF]++;
+		CanonicalCode code = Proj3.createCanonicalCode(counts, TABLE_BITS);
+		long[] codeBits = code.getCodeTable(256);
+		int[] codeLengths = code.getLengthTable(256);
+
+		ByteArrayOutputStream frame = new ByteArrayOutputStream(TABLE_SIZE + 12 + len);
+		for (int s = 0; s < 256; s += 2)
+			frame.write((codeLengths[s] << 4) | codeLengths[s + 1]);
+
+		byte[][] streams = new byte[STREAMS][];
+		int quarter = quarter(len);
+		for (int k = 0; k < STREAMS; k++)
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(quarter);
+			BitOutput bits = new BitOutput(bytes);
+			int end = Math.min(len, (k + 1) * quarter);
+			for (int i = Math.min(len, k * quarter); i < end; i++)
+			{
+				int b = block[i] & 0xFF;
+				bits.writeBits(codeBits[b], codeLengths[b]);
+			}
+			bits.flush();
+			streams[k] = bytes.toByteArray();
+		}
+
+		DataOutputStream data = new DataOutputStream(frame);
+		for (int k = 0; k < STREAMS - 1; k++)
+			data.writeInt(streams[k].length);
+		for (byte[] stream : streams)
+			data.write(stream);
+		return frame.toByteArray();
+	}
+
+	/**
+	 * Decompresses one frame
+	 * @param frame - the frame, followed by at least PADDING bytes of any value
+	 * @param length - the length of the frame
+	 * @param block - receives the bytes
+	 * @param n - the number of bytes in the block
+	 * @throws IOException - the frame is corrupt
+	 */
+	private static void decompressBlock(byte[] frame, int length, byte[] block, int n) throws IOException
+	{
+		int[] table = decodingTable(frame);
+
+		//Where each stream starts and ends, in bytes
+		int quarter = quarter(n);
+		int[] starts = new int[STREAMS + 1];
+		starts[0] = TABLE_SIZE + 4 * (STREAMS - 1);
+		for (int k = 0; k < STREAMS - 1; k++)
+		{
+			int size = ((frame[TABLE_SIZE + 4 * k] & 0xFF) << 24) | ((frame[TABLE_SIZE + 4 * k + 1] & 0xFF) << 16)
+					| ((frame[TABLE_SIZE + 4 * k + 2] & 0xFF) << 8) | (frame[TABLE_SIZE + 4 * k + 3] & 0xFF);
+			if (size < 0 || size > length - starts[k])
+				throw new IOException("Corrupt stream length");
+			starts[k + 1] = starts[k] + size;
+		}
+		starts[STREAMS] = length;
+
+		int p0 = 8 * starts[0], p1 = 8 * starts[1], p2 = 8 * starts[2], p3 = 8 * starts[3];
+		int o0 = 0, o1 = Math.min(n, quarter), o2 = Math.min(n, 2 * quarter), o3 = Math.min(n, 3 * quarter);
+
+		//The last stream is never longer than the others, so it decides how long all four can go together
+		int rounds = (n - o3) / SYMBOLS_PER_LOAD;
+		int limit = 8 * length;
+		for (int r = 0; r < rounds; r++)
+		{
+			//A corrupt stream can run on into the others, but must not run past the frame
+			if (p0 > limit || p1 > limit || p2 > limit || p3 > limit)
+				throw new IOException("Compressed block is truncated or corrupt");
+			long w0 = (long) LONG.get(frame, p0 >>> 3) << (p0 & 7);
+			long w1 = (long) LONG.get(frame, p1 >>> 3) << (p1 & 7);
+			long w2 = (long) LONG.get(frame, p2 >>> 3) << (p2 & 7);
+			long w3 = (long) LONG.get(frame, p3 >>> 3) << (p3 & 7);
+			for (int i = 0; i < SYMBOLS_PER_LOAD; i++)
+			{
+				int e0 = table[(int) (w0 >>> (64 - TABLE_BITS))];
+				int e1 = table[(int) (w1 >>> (64 - TABLE_BITS))];
+				int e2 = table[(int) (w2 >>> (64 - TABLE_BITS))];
+				int e3 = table[(int) (w3 >>> (64 - TABLE_BITS))];
+				block[o0++] = (byte) (e0 >>> 8);
+				block[o1++] = (byte) (e1 >>> 8);
+				block[o2++] = (byte) (e2 >>> 8);
+				block[o3++] = (byte) (e3 >>> 8);
+				w0 <<= e0 & 0xFF;
+				w1 <<= e1 & 0xFF;
+				w2 <<= e2 & 0xFF;
+				w3 <<= e3 & 0xFF;
+				p0 += e0 & 0xFF;
+				p1 += e1 & 0xFF;
+				p2 += e2 & 0xFF;
+				p3 += e3 & 0xFF;
+			}
+		}
+
+		//Finish each stream on its own
+		p0 = finish(frame, table, p0, block, o0, Math.min(n, quarter), length);
+		p1 = finish(frame, table, p1, block, o1, Math.min(n, 2 * quarter), length);
+		p2 = finish(frame, table, p2, block, o2, Math.min(n, 3 * quarter), length);
+		p3 = finish(frame, table, p3, block, o3, n, length);
+		int[] ends = {p0, p1, p2, p3};
+		for (int k = 0; k < STREAMS; k++)
+			if ((ends[k] + 7) >>> 3 != starts[k + 1])
+				throw new IOException("Compressed block is truncated or corrupt");
+	}
+
+	/**
+	 * Decodes the rest of one stream, one symbol at a time
+	 * @param frame - the frame, followed by PADDING bytes
+	 * @param table - the decoding table
+	 * @param pos - the position of the next code, in bits
+	 * @param block - receives the bytes
+	 * @param off - where the next byte goes
+	 * @param end - where the stream's bytes end
+	 * @param length - the length of the frame
+	 * @return the position after the last code, in bits
+	 * @throws IOException - the stream runs past the frame
+	 */
+	private static int finish(byte[] frame, int[] table, int pos, byte[] block, int off, int end, int length) throws IOException
+	{
+		while (off < end)
+		{
+			if (pos > 8 * length)
+				throw new IOException("Compressed block is truncated or corrupt");
+			long window = (long) LONG.get(frame, pos >>> 3) << (pos & 7);
+			int entry = table[(int) (window >>> (64 - TABLE_BITS))];
+			block[off++] = (byte) (entry >>> 8);
+			pos += entry & 0xFF;
+		}
+		return pos;
+	}
+
+	/**
+	 * Builds the flat decoding table from the code lengths at the start of a frame.
+	 * Each entry is (byte << 8) | code length, for the code its index starts with.
+	 * @param frame - the frame
+	 * @return the table, with 2^TABLE_BITS entries
+	 * @throws IOException - the code lengths are not a complete prefix code
+	 */
+	private static int[] decodingTable(byte[] frame) throws IOException
+	{
+		int[] symbols = new int[256];
+		int[] lengths = new int[256];
+		int count = 0;
+		long kraft = 0;
+		for (int s = 0; s < 256; s++)
+		{
+			int len = (frame[s >>> 1] >>> (((s & 1) == 0) ? 4 : 0)) & 0xF;
+			if (len == 0)
+				continue;
+			if (len > TABLE_BITS)
+				throw new IOException("Corrupt code length " + len);
+			symbols[count] = s;
+			lengths[count++] = len;
+			kraft += 1L << (TABLE_BITS - len);
+		}
+
+		//Every index must lead to a code, so that no lookup needs checking
+		int[] table = new int[1 << TABLE_BITS];
+		if (count == 1 && lengths[0] == 1)
+		{
+			Arrays.fill(table, (symbols[0] << 8) | 1);
+			return table;
+		}
+		if (kraft != (1L << TABLE_BITS))
+			throw new IOException("Code lengths are not a complete code");
+		CanonicalCode code = new CanonicalCode(Arrays.copyOf(symbols, count), Arrays.copyOf(lengths, count));
+		for (int i = 0; i < code.size(); i++)
+		{
+			int shift = TABLE_BITS - code.getLength(i);
+			int first = (int) code.getCode(i) << shift;
+			Arrays.fill(table, first, first + (1 << shift), (code.getSymbol(i) << 8) | code.getLength(i));
+		}
+		return table;
+	}
+
+	/**
+	 * Gets the number of bytes in each of the first three quarters of a block;
+	 * the last quarter holds the rest, which is never more
+	 * @param n - the number of bytes in the block
+	 * @return the length of a quarter
+	 */
+	private static int quarter(int n)
+	{
+		return (n + STREAMS - 1) / STREAMS;
+	}
+}
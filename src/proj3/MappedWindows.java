@@ -0,0 +1,85 @@
+package proj3;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Maps a region of a file into memory one window at a time. A single mapping
+ * cannot be larger than 2 GB, so larger regions are walked through as a series
+ * of windows, each mapped when the previous one is used up.
+ */
+public class MappedWindows {
+
+	/**
+	 * Largest number of bytes mapped at once
+	 */
+	public static final long WINDOW_SIZE = 1L << 30;
+
+	/**
+	 * The file being mapped
+	 */
+	private FileChannel channel;
+	/**
+	 * READ_ONLY for input, READ_WRITE for output
+	 */
+	private FileChannel.MapMode mode;
+	/**
+	 * Position in the file of the next window
+	 */
+	private long position;
+	/**
+	 * Position in the file where the region ends
+	 */
+	private long end;
+	/**
+	 * Size of each window
+	 */
+	private long windowSize;
+
+	/**
+	 * Constructor which maps windows of the default size
+	 * @param channel - the file being mapped
+	 * @param mode - READ_ONLY for input, READ_WRITE for output
+	 * @param position - where the region starts
+	 * @param length - the number of bytes in the region
+	 */
+	public MappedWindows(FileChannel channel, FileChannel.MapMode mode, long position, long length)
+	{
+		this(channel, mode, position, length, WINDOW_SIZE);
+	}
+
+	/**
+	 * Constructor which initializes the data members
+	 * @param channel - the file being mapped
+	 * @param mode - READ_ONLY for input, READ_WRITE for output
+	 * @param position - where the region starts
+	 * @param length - the number of bytes in the region
+	 * @param windowSize - the largest number of bytes mapped at once
+	 */
+	public MappedWindows(FileChannel channel, FileChannel.MapMode mode, long position, long length, long windowSize)
+	{
+		if (windowSize < 1 || windowSize > Integer.MAX_VALUE)
+			throw new IllegalArgumentException("Bad window size " + windowSize);
+		this.channel = channel;
+		this.mode = mode;
+		this.position = position;
+		this.end = position + length;
+		this.windowSize = windowSize;
+	}
+
+	/**
+	 * Maps the next window of the region
+	 * @return the window, or null if the region is used up
+	 * @throws IOException - file IO error
+	 */
+	public MappedByteBuffer next() throws IOException
+	{
+		if (position >= end)
+			return null;
+		long size = Math.min(windowSize, end - position);
+		MappedByteBuffer window = channel.map(mode, position, size);
+		position += size;
+		return window;
+	}
+}
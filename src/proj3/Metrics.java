@@ -0,0 +1,298 @@
+package proj3;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Measurements of one compression or decompression: the wall time of each
+ * phase (counting, building the code, encoding, decoding, ...), bytes in and
+ * out, symbols coded and the largest buffer held.
+ *
+ * Every phase is also recorded as a proj3.Phase JFR event, and the totals as
+ * a proj3.Summary event, so a flight recording of a slow job shows where the
+ * time went. The same totals are available as a single JSON line.
+ * Events are only created once the flight recorder is running, since
+ * starting it up takes longer than compressing a small file.
+ */
+public class Metrics {
+
+	/**
+	 * JFR event covering one phase
+	 */
+	@Name("proj3.Phase")
+	@Label("Huffman Phase")
+	@Category("Huffman")
+	@Description("One phase of a compression or decompression")
+	static class PhaseEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+		@Label("Phase")
+		String phase;
+	}
+
+	/**
+	 * JFR event holding the totals of a whole operation
+	 */
+	@Name("proj3.Summary")
+	@Label("Huffman Summary")
+	@Category("Huffman")
+	@Description("Totals of a compression or decompression")
+	static class SummaryEvent extends Event
+	{
+		@Label("Operation")
+		String operation;
+		@Label("Bytes In")
+		@DataAmount
+		long bytesIn;
+		@Label("Bytes Out")
+		@DataAmount
+		long bytesOut;
+		@Label("Compression Ratio")
+		double ratio;
+		@Label("Symbols")
+		long symbols;
+		@Label("Symbols per Second")
+		double symbolsPerSecond;
+		@Label("Peak Buffer Size")
+		@DataAmount
+		long peakBuffer;
+	}
+
+	/**
+	 * "compress" or "decompress"
+	 */
+	private String operation;
+	/**
+	 * Wall time of each finished phase in nanoseconds, in the order they ran
+	 */
+	private Map<String, Long> phases;
+	/**
+	 * Name of the phase running now, or null
+	 */
+	private String phase;
+	/**
+	 * When the phase running now started
+	 */
+	private long phaseStart;
+	/**
+	 * JFR event of the phase running now, or null if the flight recorder is off
+	 */
+	private PhaseEvent event;
+	/**
+	 * When the operation started
+	 */
+	private long start;
+	/**
+	 * Number of bytes read
+	 */
+	private long bytesIn;
+	/**
+	 * Number of bytes written
+	 */
+	private long bytesOut;
+	/**
+	 * Whether only part of the input was decoded, so the bytes read and
+	 * written do not make a compression ratio
+	 */
+	private boolean partial;
+	/**
+	 * Number of symbols coded
+	 */
+	private long symbols;
+	/**
+	 * Largest buffer held at once, in bytes
+	 */
+	private long peakBuffer;
+	/**
+	 * Hits, misses and evictions of the code cache, or null if there was no cache
+	 */
+	private long[] cache;
+
+	/**
+	 * Constructor which starts the clock
+	 * @param operation - "compress" or "decompress"
+	 */
+	public Metrics(String operation)
+	{
+		this.operation = operation;
+		this.phases = new LinkedHashMap<String, Long>();
+		this.start = System.nanoTime();
+	}
+
+	/**
+	 * Ends the phase running now, if any, and starts another
+	 * @param name - the name of the new phase
+	 */
+	public void startPhase(String name)
+	{
+		endPhase();
+		phase = name;
+		if (FlightRecorder.isInitialized())
+		{
+			event = new PhaseEvent();
+			event.operation = operation;
+			event.phase = name;
+			event.begin();
+		}
+		phaseStart = System.nanoTime();
+	}
+
+	/**
+	 * Ends the phase running now, if any
+	 */
+	public void endPhase()
+	{
+		if (null == phase)
+			return;
+		long elapsed = System.nanoTime() - phaseStart;
+		if (null != event)
+			event.commit();
+		Long previous = phases.get(phase);
+		phases.put(phase, (null == previous ? 0 : previous) + elapsed);
+		phase = null;
+		event = null;
+	}
+
+	/**
+	 * Sets the number of bytes read and written
+	 * @param in - the number of bytes read
+	 * @param out - the number of bytes written
+	 */
+	public void setBytes(long in, long out)
+	{
+		bytesIn = in;
+		bytesOut = out;
+	}
+
+	/**
+	 * Marks the operation as decoding only part of the input, such as a range
+	 * of a file of blocks, which leaves the ratio out of the totals
+	 */
+	public void setPartial()
+	{
+		partial = true;
+	}
+
+	/**
+	 * Sets the number of symbols coded
+	 * @param count - the number of symbols
+	 */
+	public void setSymbols(long count)
+	{
+		symbols = count;
+	}
+
+	/**
+	 * Notes the size of a buffer, keeping the largest seen. Safe to call from
+	 * several threads.
+	 * @param bytes - the size of the buffer in bytes
+	 */
+	public synchronized void noteBuffer(long bytes)
+	{
+		peakBuffer = Math.max(peakBuffer, bytes);
+	}
+
+	/**
+	 * Sets the statistics of the code cache
+	 * @param hits - the number of lookups answered from the cache
+	 * @param misses - the number of lookups that built a code or table
+	 * @param evictions - the number of entries dropped from the cache
+	 */
+	public void setCache(long hits, long misses, long evictions)
+	{
+		cache = new long[] {hits, misses, evictions};
+	}
+
+	/**
+	 * Ends the last phase and records the totals as a JFR event
+	 * @return the totals as a JSON line
+	 */
+	public String finish()
+	{
+		endPhase();
+		long total = System.nanoTime() - start;
+		if (FlightRecorder.isInitialized())
+			recordSummary(total);
+		return toJson(total);
+	}
+
+	/**
+	 * Records the totals as a JFR event
+	 * @param total - the wall time of the operation in nanoseconds
+	 */
+	private void recordSummary(long total)
+	{
+		SummaryEvent summary = new SummaryEvent();
+		summary.operation = operation;
+		summary.bytesIn = bytesIn;
+		summary.bytesOut = bytesOut;
+		summary.ratio = partial ? Double.NaN : ratio();
+		summary.symbols = symbols;
+		summary.symbolsPerSecond = symbols / Math.max(total / 1e9, 1e-9);
+		summary.peakBuffer = peakBuffer;
+		summary.commit();
+	}
+
+	/**
+	 * Gets the size of the output as a fraction of the size of the input
+	 * @return the compressed size over the original size, 0 for empty input
+	 */
+	private double ratio()
+	{
+		long original = operation.equals("compress") ? bytesIn : bytesOut;
+		long compressed = operation.equals("compress") ? bytesOut : bytesIn;
+		return (original == 0) ? 0 : (double) compressed / original;
+	}
+
+	/**
+	 * Formats the totals as one line of JSON
+	 * @param total - the wall time of the operation in nanoseconds
+	 * @return the JSON line
+	 */
+	private String toJson(long total)
+	{
+		StringBuilder json = new StringBuilder();
+		json.append("{\"operation\":\"").append(operation).append('"');
+		json.append(",\"bytesIn\":").append(bytesIn);
+		json.append(",\"bytesOut\":").append(bytesOut);
+		if (!partial)
+			json.append(",\"ratio\":").append(String.format(Locale.ROOT, "%.4f", ratio()));
+		json.append(",\"symbols\":").append(symbols);
+		json.append(",\"symbolsPerSecond\":").append((long) (symbols / Math.max(total / 1e9, 1e-9)));
+		json.append(",\"peakBufferBytes\":").append(peakBuffer);
+		if (null != cache)
+			json.append(",\"cache\":{\"hits\":").append(cache[0]).append(",\"misses\":").append(cache[1])
+					.append(",\"evictions\":").append(cache[2]).append('}');
+		json.append(",\"totalMs\":").append(millis(total));
+		json.append(",\"phasesMs\":{");
+		boolean first = true;
+		for (Map.Entry<String, Long> entry : phases.entrySet())
+		{
+			if (!first)
+				json.append(',');
+			json.append('"').append(entry.getKey()).append("\":").append(millis(entry.getValue()));
+			first = false;
+		}
+		return json.append("}}").toString();
+	}
+
+	/**
+	 * Formats nanoseconds as milliseconds
+	 * @param nanos - the time in nanoseconds
+	 * @return the time in milliseconds, to three places
+	 */
+	private static String millis(long nanos)
+	{
+		return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+	}
+}
@@ -0,0 +1,140 @@
+package proj3;
+
+import java.util.Arrays;
+
+/**
+ * Optimal length-limited prefix codes by the package-merge algorithm.
+ *
+ * Each symbol starts as a coin whose value is its frequency. Coins are listed
+ * once per allowed bit of code length. Working from the longest length up,
+ * the cheapest pairs of one list are packaged together and merged into the
+ * next list. The cheapest 2n - 2 items of the last list are then chosen, and
+ * a symbol's code length is the number of times its coin was chosen, counting
+ * the coins inside chosen packages.
+ */
+public class PackageMerge {
+
+	/**
+	 * Finds the optimal code lengths that are no longer than a limit
+	 * @param freqs - the frequency of each symbol, all positive
+	 * @param maxLength - the longest code length allowed
+	 * @return the code length of each symbol, in the order of freqs
+	 * @throws IllegalArgumentException - the symbols do not fit in codes of maxLength bits
+	 */
+	public static int[] limitLengths(long[] freqs, int maxLength)
+	{
+		int n = freqs.length;
+		int[] lengths = new int[n];
+		if (n == 0)
+			return lengths;
+		if (n == 1)
+		{
+			lengths[0] = 1;
+			return lengths;
+		}
+		if (maxLength < 1 || (maxLength < 31 && (1 << maxLength) < n))
+			throw new IllegalArgumentException(n + " symbols do not fit in codes of " + maxLength + " bits");
+
+		//Sort the symbols by frequency
+		int[] order = sortByFrequency(freqs);
+		long[] coins = new long[n];
+		for (int i = 0; i < n; i++)
+			coins[i] = freqs[order[i]];
+
+		//item[level][i] >= 0 is a coin (its position in order); item < 0 is the
+		//package of items 2k and 2k + 1 of the level before, stored as -(k + 1)
+		int levels = Math.min(maxLength, 2 * n);
+		long[][] weight = new long[levels][];
+		int[][] item = new int[levels][];
+		weight[0] = coins.clone();
+		item[0] = new int[n];
+		for (int i = 0; i < n; i++)
+			item[0][i] = i;
+
+		for (int level = 1; level < levels; level++)
+		{
+			long[] prev = weight[level - 1];
+			int packages = prev.length / 2;
+			weight[level] = new long[n + packages];
+			item[level] = new int[n + packages];
+
+			//Merge the coins with the packages of the level before
+			int c = 0;
+			int p = 0;
+			for (int i = 0; i < n + packages; i++)
+			{
+				long packageWeight = (p < packages) ? prev[2 * p] + prev[2 * p + 1] : Long.MAX_VALUE;
+				if (c < n && coins[c] <= packageWeight)
+				{
+					weight[level][i] = coins[c];
+					item[level][i] = c++;
+				}
+				else
+				{
+					weight[level][i] = packageWeight;
+					item[level][i] = -(p++ + 1);
+				}
+			}
+		}
+
+		//Choose the cheapest 2n - 2 items of the last level and count the coins in them
+		int[] counts = new int[n];
+		int top = levels - 1;
+		for (int i = 0; i < 2 * n - 2; i++)
+			count(item, top, i, counts);
+		for (int i = 0; i < n; i++)
+			lengths[order[i]] = counts[i];
+		return lengths;
+	}
+
+	/**
+	 * Counts the coins inside an item
+	 * @param item - the items of every level
+	 * @param level - the level of the item
+	 * @param i - the position of the item in its level
+	 * @param counts - receives one more for every coin found
+	 */
+	private static void count(int[][] item, int level, int i, int[] counts)
+	{
+		int it = item[level][i];
+		if (it >= 0)
+		{
+			counts[it]++;
+			return;
+		}
+		int k = -it - 1;
+		count(item, level - 1, 2 * k, counts);
+		count(item, level - 1, 2 * k + 1, counts);
+	}
+
+	/**
+	 * Sorts symbol numbers by frequency, breaking ties by symbol number
+	 * @param freqs - the frequency of each symbol
+	 * @return the symbol numbers from the least to the most frequent
+	 */
+	private static int[] sortByFrequency(long[] freqs)
+	{
+		Integer[] boxed = new Integer[freqs.length];
+		for (int i = 0; i < freqs.length; i++)
+			boxed[i] = i;
+		Arrays.sort(boxed, (a, b) -> freqs[a] != freqs[b] ? Long.compare(freqs[a], freqs[b]) : a - b);
+		int[] order = new int[freqs.length];
+		for (int i = 0; i < freqs.length; i++)
+			order[i] = boxed[i];
+		return order;
+	}
+
+	/**
+	 * Adds up the number of bits needed to code every occurrence of every symbol
+	 * @param freqs - the frequency of each symbol
+	 * @param lengths - the code length of each symbol
+	 * @return the coded size in bits
+	 */
+	public static long codedBits(long[] freqs, int[] lengths)
+	{
+		long bits = 0;
+		for (int i = 0; i < freqs.length; i++)
+			bits += freqs[i] * lengths[i];
+		return bits;
+	}
+}
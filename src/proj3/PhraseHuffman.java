@@ -0,0 +1,605 @@
+package proj3;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Huffman coding over an extended alphabet: besides the 256 byte values and
+ * the end of file symbol, frequent phrases (digrams, trigrams and whole words)
+ * become symbols of their own. One decoding step then writes a whole phrase.
+ *
+ * Phrases are picked from a sample at the start of the input by the number of
+ * bytes they would save, until the phrase dictionary reaches its size budget.
+ * The input is cut into symbols by greedy longest match. Phrases whose codes
+ * then save fewer bits than they cost to store are dropped and the input is
+ * cut again, a few times at most.
+ *
+ * Layout of a compressed file, big-endian:
+ *   int    magic number "HUFW"
+ *   byte   format version
+ *   long   number of bytes of original data
+ *   short  number of phrases; phrase i is symbol FIRST_PHRASE + i
+ *   then for each phrase:
+ *   byte   its length
+ *   bytes  the phrase
+ *   then the code table, as FileHeader.writeCodeTable writes it (version 1
+ *   stored a short symbol and a byte length for each coded symbol instead)
+ *   and finally the coded bits, ending with the end of file symbol
+ */
+public class PhraseHuffman {
+
+	/**
+	 * Magic number identifying a file compressed with phrases
+	 */
+	public static final int MAGIC = 0x48554657;
+	/**
+	 * Current format version
+	 */
+	public static final int VERSION = 2;
+	/**
+	 * Symbol of the first phrase
+	 */
+	public static final int FIRST_PHRASE = Proj3.EOF_SYMBOL + 1;
+	/**
+	 * Longest phrase, in bytes
+	 */
+	public static final int MAX_PHRASE_LENGTH = 16;
+	/**
+	 * Largest number of phrases
+	 */
+	public static final int MAX_PHRASES = Character.MAX_VALUE + 1 - FIRST_PHRASE;
+	/**
+	 * Default size of the phrase dictionary, in bytes
+	 */
+	public static final int DEFAULT_BUDGET = 4096;
+	/**
+	 * Number of bytes at the start of the input that phrases are picked from
+	 */
+	private static final int SAMPLE_SIZE = 1 << 20;
+	/**
+	 * Fewest times a candidate must occur in the sample to be considered
+	 */
+	private static final int MIN_USES = 4;
+	/**
+	 * Largest number of times the phrases are pruned
+	 */
+	private static final int PRUNE_ROUNDS = 3;
+	/**
+	 * Size of the input buffer
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Receives the symbols of the input one at a time
+	 */
+	private interface SymbolSink
+	{
+		void symbol(int symbol) throws IOException;
+	}
+
+	/**
+	 * Trie of the phrases, with its edges in an open addressing hash table keyed
+	 * by parent node and byte, for greedy longest matching
+	 */
+	private static class PhraseTrie
+	{
+		/**
+		 * Edge keys, (parent node << 8 | byte) + 1, 0 for an empty slot
+		 */
+		private long[] keys;
+		/**
+		 * Child node of each edge
+		 */
+		private int[] children;
+		/**
+		 * Symbol of the phrase ending at each node, -1 if none
+		 */
+		private int[] symbols;
+		/**
+		 * Number of nodes
+		 */
+		private int size;
+
+		public PhraseTrie(byte[][] phrases)
+		{
+			int bytes = 0;
+			for (byte[] phrase : phrases)
+				bytes += phrase.length;
+			int capacity = Integer.highestOneBit(Math.max(8, 2 * bytes)) * 2;
+			keys = new long[capacity];
+			children = new int[capacity];
+			symbols = new int[bytes + 1];
+			Arrays.fill(symbols, -1);
+			size = 1;
+			for (int p = 0; p < phrases.length; p++)
+			{
+				int node = 0;
+				for (byte b : phrases[p])
+				{
+					int child = child(node, b);
+					if (child < 0)
+					{
+						child = size++;
+						int slot = slot(node, b);
+						keys[slot] = key(node, b);
+						children[slot] = child;
+					}
+					node = child;
+				}
+				symbols[node] = FIRST_PHRASE + p;
+			}
+		}
+
+		/**
+		 * Follows an edge
+		 * @param node - the parent node
+		 * @param b - the byte on the edge
+		 * @return the child node, or -1 if there is no such edge
+		 */
+		public int child(int node, byte b)
+		{
+			int slot = slot(node, b);
+			return (keys[slot] == 0) ? -1 : children[slot];
+		}
+
+		/**
+		 * Finds the slot of an edge, or the empty slot where it would go
+		 * @param node - the parent node
+		 * @param b - the byte on the edge
+		 * @return the slot
+		 */
+		private int slot(int node, byte b)
+		{
+			long key = key(node, b);
+			int mask = keys.length - 1;
+			int slot = (int) ((key * 0x9E3779B97F4A7C15L) >>> 40) & mask;
+			while (keys[slot] != 0 && keys[slot] != key)
+				slot = (slot + 1) & mask;
+			return slot;
+		}
+
+		private static long key(int node, byte b)
+		{
+			return (((long) node << 8) | (b & 0xFF)) + 1;
+		}
+	}
+
+	/**
+	 * Compresses the bytes of a file, reading it once to pick phrases, up to
+	 * PRUNE_ROUNDS times to count symbols, and once more to encode them
+	 * @param inputFile - the name of the file to be compressed
+	 * @param out - receives the compressed data
+	 * @param budget - the largest size of the phrase dictionary in bytes
+	 * @return the number of phrases used
+	 * @throws IOException - file IO error
+	 */
+	public static int compress(String inputFile, OutputStream out, int budget) throws IOException
+	{
+		byte[][] phrases = (budget > 0) ? choosePhrases(readSample(inputFile), budget) : new byte[0][];
+
+		long[] counts = countSymbols(inputFile, phrases);
+		CanonicalCode code = Proj3.createCanonicalCode(counts, CanonicalCode.MAX_CODE_LENGTH);
+		for (int round = 0; round < PRUNE_ROUNDS && phrases.length > 0; round++)
+		{
+			byte[][] kept = prune(phrases, counts, code);
+			if (kept.length == phrases.length)
+				break;
+			phrases = kept;
+			counts = countSymbols(inputFile, phrases);
+			code = Proj3.createCanonicalCode(counts, CanonicalCode.MAX_CODE_LENGTH);
+		}
+		if (phrases.length > 0)
+		{
+			//Longer byte codes can eat up what each phrase saves, so check the whole
+			long[] byteCounts = spellOut(phrases, counts);
+			CanonicalCode byteCode = Proj3.createCanonicalCode(byteCounts, CanonicalCode.MAX_CODE_LENGTH);
+			if (estimateSize(phrases, counts, code) >= estimateSize(new byte[0][], byteCounts, byteCode))
+			{
+				phrases = new byte[0][];
+				counts = byteCounts;
+				code = byteCode;
+			}
+		}
+		long length = 0;
+		for (int s = 0; s < Proj3.EOF_SYMBOL; s++)
+			length += counts[s];
+		for (int p = 0; p < phrases.length; p++)
+			length += counts[FIRST_PHRASE + p] * phrases[p].length;
+
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeLong(length);
+		data.writeShort(phrases.length);
+		for (byte[] phrase : phrases)
+		{
+			data.writeByte(phrase.length);
+			data.write(phrase);
+		}
+		FileHeader.writeCodeTable(data, code);
+		data.flush();
+
+		BitOutput bits = new BitOutput(out);
+		long[] codeBits = code.getCodeTable(counts.length);
+		int[] codeLengths = code.getLengthTable(counts.length);
+		InputStream in = new FileInputStream(inputFile);
+		try
+		{
+			tokenize(in, new PhraseTrie(phrases), symbol -> {
+				if (codeLengths[symbol] == 0)
+					throw new IOException("File changed while it was being compressed");
+				bits.writeBits(codeBits[symbol], codeLengths[symbol]);
+			});
+		}
+		finally
+		{
+			in.close();
+		}
+		bits.writeBits(codeBits[Proj3.EOF_SYMBOL], codeLengths[Proj3.EOF_SYMBOL]);
+		bits.flush();
+		return phrases.length;
+	}
+
+	/**
+	 * Decompresses data written by compress
+	 * @param in - the compressed data
+	 * @param out - receives the original data
+	 * @throws IOException - IO error, or the data is corrupt
+	 */
+	public static void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not compressed with phrases");
+		int version = data.readUnsignedByte();
+		if (version < 1 || version > VERSION)
+			throw new IOException("Unsupported format version " + version);
+		long length = data.readLong();
+		int phraseCount = data.readUnsignedShort();
+		if (length < 0 || phraseCount > MAX_PHRASES)
+			throw new IOException("Corrupt header");
+		byte[][] phrases = new byte[phraseCount][];
+		for (int p = 0; p < phraseCount; p++)
+		{
+			phrases[p] = new byte[data.readUnsignedByte()];
+			if (phrases[p].length < 2 || phrases[p].length > MAX_PHRASE_LENGTH)
+				throw new IOException("Corrupt phrase dictionary");
+			data.readFully(phrases[p]);
+		}
+		CanonicalCode code = (version >= 2) ? FileHeader.readCodeTable(data, FIRST_PHRASE + phraseCount)
+				: readOldCodeTable(data, FIRST_PHRASE + phraseCount);
+		if (code.size() < 1)
+			throw new IOException("Corrupt code table");
+		DecodeTable table = new DecodeTable(code);
+
+		BitInput bits = new BitInput(in);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		int pos = 0;
+		long written = 0;
+		int symbol = table.decode(bits);
+		while (symbol != Proj3.EOF_SYMBOL)
+		{
+			if (symbol < 0)
+				throw new IOException("Compressed file is truncated or corrupt");
+			if (pos > buffer.length - MAX_PHRASE_LENGTH)
+			{
+				out.write(buffer, 0, pos);
+				pos = 0;
+			}
+			if (symbol < Proj3.EOF_SYMBOL)
+			{
+				buffer[pos++] = (byte) symbol;
+				written++;
+			}
+			else
+			{
+				byte[] phrase = phrases[symbol - FIRST_PHRASE];
+				System.arraycopy(phrase, 0, buffer, pos, phrase.length);
+				pos += phrase.length;
+				written += phrase.length;
+			}
+			symbol = table.decode(bits);
+		}
+		out.write(buffer, 0, pos);
+		out.flush();
+		if (written != length)
+			throw new IOException("Compressed file does not match its length");
+	}
+
+	/**
+	 * Reads the code table of a file written before version 2
+	 * @param data - the compressed data just after the phrases
+	 * @param alphabetSize - one more than the largest symbol allowed
+	 * @return the code
+	 * @throws IOException - IO error, or the table is corrupt
+	 */
+	private static CanonicalCode readOldCodeTable(DataInputStream data, int alphabetSize) throws IOException
+	{
+		int count = data.readInt();
+		if (count < 1 || count > alphabetSize)
+			throw new IOException("Corrupt code table");
+		int[] symbols = new int[count];
+		int[] lengths = new int[count];
+		for (int i = 0; i < count; i++)
+		{
+			symbols[i] = data.readUnsignedShort();
+			lengths[i] = data.readUnsignedByte();
+			if (symbols[i] >= alphabetSize)
+				throw new IOException("Corrupt code table");
+		}
+		try
+		{
+			return new CanonicalCode(symbols, lengths);
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Corrupt code table: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Keeps the phrases whose codes save more bits than spelling them out byte by
+	 * byte would cost, counting their place in the dictionary and code table
+	 * @param phrases - the phrases
+	 * @param counts - the number of uses of each symbol
+	 * @param code - the code built from the counts
+	 * @return the phrases worth keeping
+	 */
+	private static byte[][] prune(byte[][] phrases, long[] counts, CanonicalCode code)
+	{
+		int[] lengths = code.getLengthTable(counts.length);
+		//A byte that has no code yet would get one about as long as the longest
+		int unused = code.getLength(code.size() - 1) + 1;
+		ArrayList<byte[]> kept = new ArrayList<byte[]>();
+		for (int p = 0; p < phrases.length; p++)
+		{
+			long spelled = 0;
+			for (byte b : phrases[p])
+				spelled += (lengths[b & 0xFF] == 0) ? unused : lengths[b & 0xFF];
+			long uses = counts[FIRST_PHRASE + p];
+			long saved = uses * (spelled - lengths[FIRST_PHRASE + p]);
+			if (uses > 0 && saved > 8L * (phrases[p].length + 2))
+				kept.add(phrases[p]);
+		}
+		return kept.toArray(new byte[0][]);
+	}
+
+	/**
+	 * Counts the symbols the input would be cut into without phrases
+	 * @param phrases - the phrases
+	 * @param counts - the number of uses of each symbol with the phrases
+	 * @return the number of uses of each byte and of the end of file symbol
+	 */
+	private static long[] spellOut(byte[][] phrases, long[] counts)
+	{
+		long[] byteCounts = Arrays.copyOf(counts, FIRST_PHRASE);
+		for (int p = 0; p < phrases.length; p++)
+			for (byte b : phrases[p])
+				byteCounts[b & 0xFF] += counts[FIRST_PHRASE + p];
+		return byteCounts;
+	}
+
+	/**
+	 * Estimates the size of the compressed data, less the fixed part of the header
+	 * @param phrases - the phrases
+	 * @param counts - the number of uses of each symbol
+	 * @param code - the code built from the counts
+	 * @return the estimated size in bytes
+	 */
+	private static long estimateSize(byte[][] phrases, long[] counts, CanonicalCode code)
+	{
+		int[] lengths = code.getLengthTable(counts.length);
+		long bits = 0;
+		for (int s = 0; s < counts.length; s++)
+			bits += counts[s] * lengths[s];
+		long bytes = bits / 8 + FileHeader.codeTableSize(code);
+		for (byte[] phrase : phrases)
+			bytes += phrase.length + 1;
+		return bytes;
+	}
+
+	/**
+	 * Reads the start of a file
+	 * @param inputFile - the name of the file
+	 * @return up to SAMPLE_SIZE bytes from the start of the file
+	 * @throws IOException - file IO error
+	 */
+	private static byte[] readSample(String inputFile) throws IOException
+	{
+		InputStream in = new FileInputStream(inputFile);
+		try
+		{
+			return in.readNBytes(SAMPLE_SIZE);
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Picks the phrases that save the most, until the dictionary is full. The
+	 * candidates are every digram and trigram, and every word of letters and
+	 * digits, with and without the space after it.
+	 * @param sample - the bytes to pick phrases from
+	 * @param budget - the largest size of the dictionary in bytes
+	 * @return the phrases
+	 */
+	private static byte[][] choosePhrases(byte[] sample, int budget)
+	{
+		HashMap<String, Integer> candidates = new HashMap<String, Integer>();
+		int n = sample.length;
+
+		//Digrams and trigrams are counted without making a string of each
+		int[] digrams = new int[1 << 16];
+		int[] trigrams = new int[Math.max(0, n - 2)];
+		for (int i = 0; i + 1 < n; i++)
+		{
+			int digram = ((sample[i] & 0xFF) << 8) | (sample[i + 1] & 0xFF);
+			digrams[digram]++;
+			if (i + 2 < n)
+				trigrams[i] = (digram << 8) | (sample[i + 2] & 0xFF);
+		}
+		for (int d = 0; d < digrams.length; d++)
+			if (digrams[d] >= MIN_USES)
+				candidates.put(ngram(d, 2), digrams[d]);
+		Arrays.sort(trigrams);
+		for (int i = 0; i < trigrams.length;)
+		{
+			int j = i + 1;
+			while (j < trigrams.length && trigrams[j] == trigrams[i])
+				j++;
+			if (j - i >= MIN_USES)
+				candidates.put(ngram(trigrams[i], 3), j - i);
+			i = j;
+		}
+
+		for (int i = 0; i < n; i++)
+		{
+			if (isWordByte(sample[i]) && (i == 0 || !isWordByte(sample[i - 1])))
+			{
+				int end = i;
+				while (end < n && isWordByte(sample[end]))
+					end++;
+				int len = end - i;
+				if (len > 3 && len <= MAX_PHRASE_LENGTH)
+					candidates.merge(new String(sample, i, len, StandardCharsets.ISO_8859_1), 1, Integer::sum);
+				if (len >= 3 && len < MAX_PHRASE_LENGTH && end < n && sample[end] == ' ')
+					candidates.merge(new String(sample, i, len + 1, StandardCharsets.ISO_8859_1), 1, Integer::sum);
+			}
+		}
+
+		//A phrase saves about one symbol for each byte after its first, each time it is used
+		ArrayList<Map.Entry<String, Integer>> ranked = new ArrayList<Map.Entry<String, Integer>>();
+		for (Map.Entry<String, Integer> entry : candidates.entrySet())
+			if (entry.getValue() >= MIN_USES)
+				ranked.add(entry);
+		ranked.sort((a, b) -> {
+			long sa = (long) a.getValue() * (a.getKey().length() - 1);
+			long sb = (long) b.getValue() * (b.getKey().length() - 1);
+			return (sa != sb) ? Long.compare(sb, sa) : a.getKey().compareTo(b.getKey());
+		});
+
+		ArrayList<byte[]> phrases = new ArrayList<byte[]>();
+		long used = 0;
+		for (Map.Entry<String, Integer> entry : ranked)
+		{
+			int cost = entry.getKey().length() + 1;
+			if (used + cost > budget || phrases.size() == MAX_PHRASES)
+				break;
+			used += cost;
+			phrases.add(entry.getKey().getBytes(StandardCharsets.ISO_8859_1));
+		}
+		return phrases.toArray(new byte[0][]);
+	}
+
+	/**
+	 * Makes a string of the bytes packed in an int
+	 * @param packed - the bytes, the first in the highest used byte
+	 * @param length - the number of bytes
+	 * @return the bytes as an ISO-8859-1 string
+	 */
+	private static String ngram(int packed, int length)
+	{
+		byte[] bytes = new byte[length];
+		for (int i = 0; i < length; i++)
+			bytes[i] = (byte) (packed >>> (8 * (length - 1 - i)));
+		return new String(bytes, StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Checks whether a byte can be part of a word
+	 * @param b - the byte
+	 * @return true for ASCII letters and digits
+	 */
+	private static boolean isWordByte(byte b)
+	{
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9');
+	}
+
+	/**
+	 * Counts the symbols a file is cut into
+	 * @param inputFile - the name of the file
+	 * @param phrases - the phrases
+	 * @return the number of uses of each symbol, the end of file symbol counted once
+	 * @throws IOException - file IO error
+	 */
+	private static long[] countSymbols(String inputFile, byte[][] phrases) throws IOException
+	{
+		long[] counts = new long[FIRST_PHRASE + phrases.length];
+		InputStream in = new FileInputStream(inputFile);
+		try
+		{
+			tokenize(in, new PhraseTrie(phrases), symbol -> counts[symbol]++);
+		}
+		finally
+		{
+			in.close();
+		}
+		counts[Proj3.EOF_SYMBOL] = 1;
+		return counts;
+	}
+
+	/**
+	 * Cuts a stream into symbols, taking the longest phrase that starts at
+	 * each position, or a single byte if none does
+	 * @param input - the data
+	 * @param trie - the phrases
+	 * @param sink - receives the symbols in order
+	 * @throws IOException - IO error
+	 */
+	private static void tokenize(InputStream input, PhraseTrie trie, SymbolSink sink) throws IOException
+	{
+		InputStream in = new BufferedInputStream(input, BUFFER_SIZE);
+		byte[] buffer = new byte[BUFFER_SIZE + MAX_PHRASE_LENGTH];
+		int filled = 0;
+		boolean eof = false;
+		int i = 0;
+		while (true)
+		{
+			//Keep at least a whole phrase of lookahead until the input runs out
+			if (!eof && filled - i < MAX_PHRASE_LENGTH)
+			{
+				System.arraycopy(buffer, i, buffer, 0, filled - i);
+				filled -= i;
+				i = 0;
+				int r = in.read(buffer, filled, buffer.length - filled);
+				if (r == -1)
+					eof = true;
+				else
+					filled += r;
+				continue;
+			}
+			if (i == filled)
+				return;
+
+			int limit = Math.min(filled, i + MAX_PHRASE_LENGTH);
+			int node = 0;
+			int best = buffer[i] & 0xFF;
+			int bestLength = 1;
+			for (int j = i; j < limit; j++)
+			{
+				node = trie.child(node, buffer[j]);
+				if (node < 0)
+					break;
+				if (trie.symbols[node] >= 0)
+				{
+					best = trie.symbols[node];
+					bestLength = j - i + 1;
+				}
+			}
+			sink.symbol(best);
+			i += bestLength;
+		}
+	}
+}
@@ -1,16 +1,33 @@
 package proj3;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.ObjectInputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.TreeMap;
 
 /**
@@ -25,7 +42,64 @@ public class Proj3 {
 	/**
 	 * Map of characters in the file and their Huffman codes
 	 */
-	private static Map<Character, String> codes;
+	private static Map<Integer, String> codes;
+	/**
+	 * Huffman codes as bits, indexed by character
+	 */
+	private static long[] codeBits;
+	/**
+	 * Lengths of the Huffman codes, indexed by character
+	 */
+	private static int[] codeLengths;
+	/**
+	 * Number of characters read from the input file at a time
+	 */
+	static final int BUFFER_SIZE = 1 << 16;
+	/**
+	 * Canonical form of the Huffman codes, written to the compressed file
+	 */
+	private static CanonicalCode canonical;
+	/**
+	 * Number of characters in the file being compressed
+	 */
+	private static long symbolCount;
+	/**
+	 * Whether the file being compressed is read as characters, as bytes or as code points
+	 */
+	private static int alphabet = FileHeader.ALPHABET_CHARS;
+	/**
+	 * Index of each code point of the file being compressed, which also indexes
+	 * counts and codes in place of the code point itself
+	 */
+	private static SymbolIndex symbolIndex;
+	/**
+	 * Number of bits the data of the file being compressed takes up once encoded
+	 */
+	private static long payloadBits;
+	/**
+	 * Longest code length allowed; deeper Huffman trees are flattened by package-merge
+	 */
+	private static int maxCodeLength = CanonicalCode.MAX_CODE_LENGTH;
+	/**
+	 * Measurements of the file operation running now
+	 */
+	private static Metrics metrics;
+	/**
+	 * Whether the frequency and code tables are printed
+	 */
+	private static boolean showTables = false;
+	/**
+	 * Directory holding pre-trained code tables
+	 */
+	private static File tableDir = new File(".");
+	/**
+	 * Cache of codes and decoding tables shared by everything run in this process, or null
+	 */
+	private static CodeCache codeCache;
+	/**
+	 * Symbol marking the end of the data in the byte alphabet
+	 */
+	public static final int EOF_SYMBOL = 256;
 
 	
 	/**
@@ -35,140 +109,1260 @@ public class Proj3 {
 	 */
 	public static void main(String[] args) throws IOException {
 		
+		//Separate options from file names
+		int mode = FileHeader.ALPHABET_CHARS;
+		boolean blocks = false;
+		boolean mapped = false;
+		boolean adaptive = false;
+		boolean context = false;
+		boolean interleaved = false;
+		int phraseBudget = -1;
+		int tableId = 0;
+		boolean useTable = false;
+		int threads = Runtime.getRuntime().availableProcessors();
+		int blockSize = BlockCompressor.DEFAULT_BLOCK_SIZE;
+		long rangeStart = -1;
+		long rangeLength = 0;
+		long memory = -1;
+		String member = null;
+		int cacheCapacity = 0;
+		double cacheTolerance = CodeCache.DEFAULT_TOLERANCE;
+		ArrayList<String> names = new ArrayList<String>();
+		for (String arg : args)
+		{
+			if (arg.equals("-bytes"))
+				mode = FileHeader.ALPHABET_BYTES;
+			else if (arg.equals("-unicode"))
+				mode = FileHeader.ALPHABET_CODE_POINTS;
+			else if (arg.equals("-blocks"))
+				blocks = true;
+			else if (arg.equals("-mmap"))
+				mapped = true;
+			else if (arg.equals("-adaptive"))
+				adaptive = true;
+			else if (arg.equals("-context"))
+				context = true;
+			else if (arg.equals("-interleaved"))
+				interleaved = true;
+			else if (arg.equals("-tables"))
+				showTables = true;
+			else if (arg.equals("-phrases"))
+				phraseBudget = PhraseHuffman.DEFAULT_BUDGET;
+			else if (arg.startsWith("-phrases="))
+				phraseBudget = Integer.parseInt(arg.substring("-phrases=".length()));
+			else if (arg.startsWith("-threads="))
+				threads = Integer.parseInt(arg.substring("-threads=".length()));
+			else if (arg.startsWith("-block-size="))
+				blockSize = Integer.parseInt(arg.substring("-block-size=".length()));
+			else if (arg.startsWith("-max-length="))
+				setMaxCodeLength(Integer.parseInt(arg.substring("-max-length=".length())));
+			else if (arg.startsWith("-cache="))
+				cacheCapacity = Integer.parseInt(arg.substring("-cache=".length()));
+			else if (arg.startsWith("-cache-tolerance="))
+				cacheTolerance = Double.parseDouble(arg.substring("-cache-tolerance=".length()));
+			else if (arg.startsWith("-member="))
+				member = arg.substring("-member=".length());
+			else if (arg.startsWith("-memory="))
+				memory = Long.parseLong(arg.substring("-memory=".length()));
+			else if (arg.startsWith("-table="))
+			{
+				tableId = Integer.parseUnsignedInt(arg.substring("-table=".length()), 16);
+				useTable = true;
+			}
+			else if (arg.startsWith("-table-dir="))
+				tableDir = new File(arg.substring("-table-dir=".length()));
+			else if (arg.startsWith("-range="))
+			{
+				String[] range = arg.substring("-range=".length()).split(":");
+				rangeStart = Long.parseLong(range[0]);
+				rangeLength = Long.parseLong(range[1]);
+			}
+			else
+				names.add(arg);
+		}
+		if (cacheCapacity > 0)
+			setCodeCache(new CodeCache(cacheCapacity, cacheTolerance));
+		
+		//With no file names, run as a filter from standard input to standard output
+		if (names.size() == 1 && (names.get(0).equals("compress") || names.get(0).equals("decompress")))
+		{
+			InputStream in = new FileInputStream(FileDescriptor.in);
+			OutputStream out = new BufferedOutputStream(new FileOutputStream(FileDescriptor.out), BUFFER_SIZE);
+			try
+			{
+				if (names.get(0).equals("compress") && adaptive)
+					AdaptiveHuffman.compress(in, out);
+				else if (names.get(0).equals("compress") && useTable)
+					StaticTable.load(tableDir, tableId).compress(in, out);
+				else if (names.get(0).equals("compress"))
+					compressStream(in, out, threads, blockSize, memory);
+				else
+					decompressStream(in, out);
+				out.flush();
+			}
+			catch(IOException e)
+			{
+				System.err.println("Error reading/writing stream: " + e.getMessage());
+				System.exit(1);
+			}
+			return;
+		}
+		
+		if (names.size() == 2 && names.get(0).equals("list"))
+		{
+			try
+			{
+				listArchive(names.get(1));
+			}
+			catch(IOException e)
+			{
+				System.out.println("Error reading archive: " + e.getMessage());
+			}
+			return;
+		}
+		
 		//Check command line arguments
-		if (args.length != 3)
+		if (names.size() != 3)
 		{
 			System.out.println("This program needs three arguments to run:\n(1) The input file,");
 			System.out.println("(2) the name of the file to which the input needs to be compressed, and");
 			System.out.println("(3) the name of the file to which the second file is decompressed into.");
+			System.out.println("\nTo run only one half, use \"compress <input> <output>\" or");
+			System.out.println("\"decompress <input> <output>\".");
+			System.out.println("Add -bytes to compress any file as raw bytes instead of text.");
+			System.out.println("Add -unicode to compress text as whole Unicode code points instead of UTF-16 chars.");
+			System.out.println("Add -blocks to compress raw bytes in independent blocks on several threads");
+			System.out.println("(-threads=N and -block-size=BYTES change the defaults).");
+			System.out.println("decompress -range=START:LENGTH extracts part of a block file.");
+			System.out.println("Add -mmap to compress or decompress raw bytes through memory-mapped files.");
+			System.out.println("\"compress\" or \"decompress\" with no file names reads standard input and writes");
+			System.out.println("standard output; -memory=BYTES limits the memory used for blocks.");
+			System.out.println("Add -adaptive to compress raw bytes in one pass with adaptive Huffman codes.");
+			System.out.println("Add -interleaved to code each block of raw bytes as four streams that decode in step");
+			System.out.println("(-block-size=BYTES changes the default).");
+			System.out.println("Add -context to code each byte with a table chosen by the byte before it.");
+			System.out.println("Add -phrases[=BYTES] to make frequent digrams, trigrams and words symbols of their");
+			System.out.println("own, with a dictionary of at most BYTES bytes (default 4096).");
+			System.out.println("Add -max-length=N to keep every code at most N bits long (e.g. 11, 12 or 15).");
+			System.out.println("\"train <corpus> <dir>\" builds a code table for small files and saves it in dir;");
+			System.out.println("compress -table=ID [-table-dir=DIR] then uses it instead of a header.");
+			System.out.println("Add -cache=N to reuse up to N codes built for similar data within a run, if they");
+			System.out.println("cost at most -cache-tolerance=FRACTION (default 0.01) more than the best code.");
+			System.out.println("\"archive <dir or list> <archive>\" compresses many files into one archive on");
+			System.out.println("-threads=N threads; \"extract <archive> <dir>\" [-member=NAME] and \"list <archive>\" read it.");
+			System.out.println("Add -tables to print the frequency and code tables as well as the summary line.");
 			System.exit(0);
 		}
-		String inputFile = args[0];
-		String compressedFile = args[1];
-		String decompressedFile = args[2];
 		
-		System.out.println("Reading input file: \"" + inputFile + "\"...\n");
 		try
 		{
-			PriorityQueue<BinaryTree<CharacterMapping>> initialForest = readFile(inputFile);
-		
-			//create tree
-			BinaryTree<CharacterMapping> encodingTree = createEncodingTree(initialForest);		
-			//Create and print encoding table
-			createEncodingTable(encodingTree);
-			//Encode to file
-			encodeFile(inputFile, compressedFile);
-			//Decode the encoded file
-			decodeFile(compressedFile, decompressedFile, encodingTree);
-			}
-			catch(IOException e)
+			if (names.get(0).equals("train"))
+				train(names.get(1), names.get(2));
+			else if (names.get(0).equals("archive"))
+				createArchive(names.get(1), names.get(2), threads);
+			else if (names.get(0).equals("extract"))
+				extractArchive(names.get(1), names.get(2), member, threads);
+			else if (names.get(0).equals("compress") && adaptive)
+				compressAdaptive(names.get(1), names.get(2));
+			else if (names.get(0).equals("compress") && context)
+				compressContext(names.get(1), names.get(2));
+			else if (names.get(0).equals("compress") && interleaved)
+				compressInterleaved(names.get(1), names.get(2), blockSize);
+			else if (names.get(0).equals("compress") && phraseBudget >= 0)
+				compressPhrases(names.get(1), names.get(2), phraseBudget);
+			else if (names.get(0).equals("compress") && useTable)
+				compressWithTable(names.get(1), names.get(2), tableId);
+			else if (names.get(0).equals("compress") && blocks)
+				compressBlocks(names.get(1), names.get(2), threads, blockSize);
+			else if (names.get(0).equals("compress") && mapped)
+				compressMapped(names.get(1), names.get(2));
+			else if (names.get(0).equals("compress"))
+				compress(names.get(1), names.get(2), mode);
+			else if (names.get(0).equals("decompress") && rangeStart >= 0)
+				decompressRange(names.get(1), names.get(2), rangeStart, rangeLength, threads);
+			else if (names.get(0).equals("decompress") && mapped)
+				decodeFileMapped(names.get(1), names.get(2));
+			else if (names.get(0).equals("decompress"))
+				decodeFile(names.get(1), names.get(2));
+			else
 			{
-				System.out.println("Error reading/writing file(s).");
+				String inputFile = names.get(0);
+				String compressedFile = names.get(1);
+				String decompressedFile = names.get(2);
+				
+				if (adaptive)
+					compressAdaptive(inputFile, compressedFile);
+				else if (context)
+					compressContext(inputFile, compressedFile);
+				else if (interleaved)
+					compressInterleaved(inputFile, compressedFile, blockSize);
+				else if (phraseBudget >= 0)
+					compressPhrases(inputFile, compressedFile, phraseBudget);
+				else if (useTable)
+					compressWithTable(inputFile, compressedFile, tableId);
+				else if (blocks)
+					compressBlocks(inputFile, compressedFile, threads, blockSize);
+				else if (mapped)
+					compressMapped(inputFile, compressedFile);
+				else
+					compress(inputFile, compressedFile, mode);
+				//Decode the encoded file using only what was written to it
+				if (mapped && !blocks && !adaptive && !context && !interleaved && phraseBudget < 0)
+					decodeFileMapped(compressedFile, decompressedFile);
+				else
+					decodeFile(compressedFile, decompressedFile);
 			}
+		}
+		catch(IOException e)
+		{
+			System.out.println("Error reading/writing file(s).");
+			if (names.get(0).equals("archive") || names.get(0).equals("extract"))
+				System.out.println(e.getMessage());
+			else if (e instanceof CharacterCodingException)
+				System.out.println("The input is not valid " + FileHeader.CODE_POINT_CHARSET + " text; compress it with -bytes instead.");
+		}
+		catch(IllegalArgumentException e)
+		{
+			System.out.println(e.getMessage());
+		}
+	}
+	
+	/**
+	 * Limits the length of the codes built from then on
+	 * @param maxLength - the longest code length allowed
+	 */
+	public static void setMaxCodeLength(int maxLength)
+	{
+		if (maxLength < 1 || maxLength > CanonicalCode.MAX_CODE_LENGTH)
+			throw new IllegalArgumentException("Bad maximum code length " + maxLength);
+		maxCodeLength = maxLength;
+	}
+	
+	/**
+	 * Shares a cache of codes and decoding tables between everything compressed
+	 * and decompressed from then on
+	 * @param cache - the cache, or null to build every code from scratch
+	 */
+	public static void setCodeCache(CodeCache cache)
+	{
+		codeCache = cache;
+	}
+	
+	/**
+	 * Builds the Huffman code for a text file and writes the compressed file
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @throws IOException - file IO error
+	 */
+	public static void compress(String inputFile, String compressedFile) throws IOException
+	{
+		compress(inputFile, compressedFile, FileHeader.ALPHABET_CHARS);
+	}
+	
+	/**
+	 * Builds the Huffman code for a file and writes the compressed file
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @param mode - FileHeader.ALPHABET_CHARS to read text, FileHeader.ALPHABET_BYTES to read raw bytes,
+	 *               FileHeader.ALPHABET_CODE_POINTS to read text as code points
+	 * @throws IOException - file IO error
+	 */
+	public static void compress(String inputFile, String compressedFile, int mode) throws IOException
+	{
+		metrics = new Metrics("compress");
+		System.out.println("Reading input file: \"" + inputFile + "\"...\n");
+		metrics.startPhase("count");
+		long[] counts = readCounts(inputFile, mode);
+		
+		//Create and print encoding table, straight from the counts
+		metrics.startPhase("table");
+		createEncodingTable(counts);
+		//Encode to file
+		metrics.startPhase("encode");
+		encodeFile(inputFile, compressedFile);
+		metrics.setSymbols(symbolCount);
+		printMetrics(inputFile, compressedFile);
+	}
+	
+	/**
+	 * Builds the Huffman code for the raw bytes of a file and writes the compressed
+	 * file through memory mappings of the input and output
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @throws IOException - file IO error
+	 */
+	public static void compressMapped(String inputFile, String compressedFile) throws IOException
+	{
+		metrics = new Metrics("compress");
+		System.out.println("Reading input file: \"" + inputFile + "\"...\n");
+		metrics.startPhase("count");
+		long[] counts = readCounts(inputFile, FileHeader.ALPHABET_BYTES);
+		
+		//Create and print encoding table, straight from the counts
+		metrics.startPhase("table");
+		createEncodingTable(counts);
+		//Encode to file
+		metrics.startPhase("encode");
+		encodeFileMapped(inputFile, compressedFile);
+		metrics.setSymbols(symbolCount);
+		printMetrics(inputFile, compressedFile);
+	}
+	
+	/**
+	 * Compresses the raw bytes of a file as independent blocks, each with its own
+	 * Huffman code, using several threads
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @param threads - the number of threads compressing blocks
+	 * @param blockSize - the number of bytes in a block
+	 * @throws IOException - file IO error
+	 */
+	public static void compressBlocks(String inputFile, String compressedFile, int threads, int blockSize) throws IOException
+	{
+		System.out.println("Compressing \"" + inputFile + "\" into \"" + compressedFile + "\" in blocks of "
+				+ blockSize + " bytes on " + threads + " threads.");
+		System.out.println("This may take a while...\n");
+		
+		metrics = new Metrics("compress");
+		metrics.startPhase("blocks");
+		BlockCompressor compressor = new BlockCompressor(threads, blockSize);
+		compressor.setMaxCodeLength(maxCodeLength);
+		compressor.setCodeCache(codeCache);
+		metrics.noteBuffer(compressor.getMemoryUse());
+		InputStream input = new FileInputStream(inputFile);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(compressedFile));
+		try
+		{
+			compressor.compress(input, output);
+		}
+		finally
+		{
+			compressor.shutdown();
+			input.close();
+			output.close();
+		}
+		System.out.println("File compression complete.\n");
+		metrics.setSymbols(new File(inputFile).length());
+		printMetrics(inputFile, compressedFile);
+	}
+	
+	/**
+	 * Compresses the raw bytes of a file in one pass with an adaptive Huffman code,
+	 * with no counting pass and no code table
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @throws IOException - file IO error
+	 */
+	public static void compressAdaptive(String inputFile, String compressedFile) throws IOException
+	{
+		System.out.println("Compressing \"" + inputFile + "\" into \"" + compressedFile + "\" with adaptive codes.");
+		System.out.println("This may take a while...\n");
+		
+		metrics = new Metrics("compress");
+		metrics.startPhase("encode");
+		InputStream input = new FileInputStream(inputFile);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(compressedFile));
+		try
+		{
+			AdaptiveHuffman.compress(input, output);
+		}
+		finally
+		{
+			input.close();
+			output.close();
+		}
+		System.out.println("File compression complete.\n");
+		metrics.setSymbols(new File(inputFile).length());
+		printMetrics(inputFile, compressedFile);
 	}
 	
 	/**
-	 * Reads the file, creates a map of character keys to frequency values, and outputs info to user
+	 * Compresses the raw bytes of a file with an order-1 context model: each byte
+	 * is coded with a table chosen by the byte before it
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @throws IOException - file IO error
+	 */
+	public static void compressContext(String inputFile, String compressedFile) throws IOException
+	{
+		System.out.println("Compressing \"" + inputFile + "\" into \"" + compressedFile + "\" with context tables.");
+		System.out.println("This may take a while...\n");
+		
+		metrics = new Metrics("compress");
+		metrics.startPhase("encode");
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(compressedFile), BUFFER_SIZE);
+		int tables;
+		try
+		{
+			tables = ContextHuffman.compress(inputFile, output);
+		}
+		finally
+		{
+			output.close();
+		}
+		System.out.println("File compression complete: " + tables + " code tables.\n");
+		metrics.setSymbols(new File(inputFile).length());
+		printMetrics(inputFile, compressedFile);
+	}
+	
+	/**
+	 * Compresses the raw bytes of a file in blocks of four interleaved streams,
+	 * which decode faster than a single stream
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @param blockSize - the number of bytes in a block
+	 * @throws IOException - file IO error
+	 */
+	public static void compressInterleaved(String inputFile, String compressedFile, int blockSize) throws IOException
+	{
+		System.out.println("Compressing \"" + inputFile + "\" into \"" + compressedFile + "\" as interleaved streams.");
+		System.out.println("This may take a while...\n");
+		
+		metrics = new Metrics("compress");
+		metrics.startPhase("encode");
+		InputStream input = new FileInputStream(inputFile);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(compressedFile), BUFFER_SIZE);
+		try
+		{
+			InterleavedHuffman.compress(input, output, blockSize);
+		}
+		finally
+		{
+			input.close();
+			output.close();
+		}
+		System.out.println("File compression complete.\n");
+		metrics.setSymbols(new File(inputFile).length());
+		printMetrics(inputFile, compressedFile);
+	}
+	
+	/**
+	 * Compresses the raw bytes of a file with frequent phrases as symbols of their own
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @param budget - the largest size of the phrase dictionary in bytes
+	 * @throws IOException - file IO error
+	 */
+	public static void compressPhrases(String inputFile, String compressedFile, int budget) throws IOException
+	{
+		System.out.println("Compressing \"" + inputFile + "\" into \"" + compressedFile + "\" with phrases.");
+		System.out.println("This may take a while...\n");
+		
+		metrics = new Metrics("compress");
+		metrics.startPhase("encode");
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(compressedFile), BUFFER_SIZE);
+		int phrases;
+		try
+		{
+			phrases = PhraseHuffman.compress(inputFile, output, budget);
+		}
+		finally
+		{
+			output.close();
+		}
+		System.out.println("File compression complete: " + phrases + " phrases.\n");
+		metrics.setSymbols(new File(inputFile).length());
+		printMetrics(inputFile, compressedFile);
+	}
+	
+	/**
+	 * Builds a code table from the raw bytes of a sample corpus and saves it for
+	 * compressing small files, which then need neither a counting pass nor a header
+	 * @param corpusFile - the name of the sample corpus
+	 * @param dir - the name of the directory the table is saved in
+	 * @throws IOException - file IO error
+	 */
+	public static void train(String corpusFile, String dir) throws IOException
+	{
+		System.out.println("Training a code table on \"" + corpusFile + "\"...\n");
+		alphabet = FileHeader.ALPHABET_BYTES;
+		long[] counts = StaticTable.trainingCounts(countBytes(corpusFile));
+		BinaryTree<CharacterMapping> tree = createEncodingTree(createForest(counts));
+		StaticTable table = new StaticTable(createCanonicalCode(tree, maxCodeLength));
+		File file = table.save(new File(dir));
+		System.out.println("Table " + String.format("%08x", table.getId()) + " saved in \"" + file + "\".");
+	}
+	
+	/**
+	 * Compresses the raw bytes of a file with a pre-trained code table, writing
+	 * only the ID of the table instead of a header
+	 * @param inputFile - the name of the file to be compressed
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @param tableId - the ID of the table, found in the table directory
+	 * @throws IOException - file IO error, or there is no such table
+	 */
+	public static void compressWithTable(String inputFile, String compressedFile, int tableId) throws IOException
+	{
+		metrics = new Metrics("compress");
+		metrics.startPhase("table");
+		StaticTable table = StaticTable.load(tableDir, tableId);
+		System.out.println("Compressing \"" + inputFile + "\" into \"" + compressedFile + "\" with table "
+				+ String.format("%08x", tableId) + ".");
+		
+		metrics.startPhase("encode");
+		InputStream input = new FileInputStream(inputFile);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(compressedFile));
+		try
+		{
+			table.compress(input, output);
+		}
+		finally
+		{
+			input.close();
+			output.close();
+		}
+		System.out.println("File compression complete.\n");
+		metrics.setSymbols(new File(inputFile).length());
+		printMetrics(inputFile, compressedFile);
+	}
+	
+	/**
+	 * Compresses many files into one archive, several at a time
+	 * @param source - the name of a directory to archive, or of a file listing the files to archive
+	 * @param archiveFile - the name of the archive
+	 * @param threads - the number of threads compressing files
+	 * @throws IOException - file IO error
+	 */
+	public static void createArchive(String source, String archiveFile, int threads) throws IOException
+	{
+		metrics = new Metrics("compress");
+		metrics.startPhase("scan");
+		ArrayList<String> members = new ArrayList<String>();
+		ArrayList<File> files = Archive.findFiles(new File(source), members);
+		System.out.println("Archiving " + files.size() + " files from \"" + source + "\" into \"" + archiveFile
+				+ "\" on " + threads + " threads.\n");
+		
+		metrics.startPhase("archive");
+		Archive archive = new Archive(threads);
+		archive.setMaxCodeLength(maxCodeLength);
+		archive.setCodeCache(codeCache);
+		OutputStream output = new BufferedOutputStream(new FileOutputStream(archiveFile), BUFFER_SIZE);
+		long total;
+		try
+		{
+			total = archive.create(files, members, output);
+		}
+		finally
+		{
+			archive.shutdown();
+			output.close();
+		}
+		metrics.noteBuffer(archive.getMemoryUse());
+		System.out.println("Archive complete.\n");
+		metrics.setSymbols(total);
+		metrics.setBytes(total, new File(archiveFile).length());
+		printMetrics();
+	}
+	
+	/**
+	 * Extracts the members of an archive into a directory, several at a time
+	 * @param archiveFile - the name of the archive
+	 * @param dir - the name of the directory to extract into
+	 * @param member - the name of the one member to extract, or null for all of them
+	 * @param threads - the number of threads extracting members
+	 * @throws IOException - file IO error, or the archive is corrupt
+	 */
+	public static void extractArchive(String archiveFile, String dir, String member, int threads) throws IOException
+	{
+		metrics = new Metrics("decompress");
+		metrics.startPhase("directory");
+		ArrayList<Archive.Member> members = Archive.list(new File(archiveFile));
+		if (null != member)
+		{
+			Archive.Member found = Archive.find(members, member);
+			members = new ArrayList<Archive.Member>();
+			members.add(found);
+		}
+		System.out.println("Extracting " + members.size() + " files from \"" + archiveFile + "\" into \"" + dir + "\".\n");
+		
+		metrics.startPhase("extract");
+		Archive archive = new Archive(threads);
+		try
+		{
+			archive.extractAll(new File(archiveFile), members, new File(dir));
+		}
+		finally
+		{
+			archive.shutdown();
+		}
+		metrics.noteBuffer(archive.getMemoryUse());
+		long in = 0;
+		long out = 0;
+		for (Archive.Member m : members)
+		{
+			in += m.getLength();
+			out += m.getSize();
+		}
+		System.out.println("Extraction complete.\n");
+		metrics.setSymbols(out);
+		metrics.setBytes(in, out);
+		printMetrics();
+	}
+	
+	/**
+	 * Prints the name and sizes of every member of an archive
+	 * @param archiveFile - the name of the archive
+	 * @throws IOException - file IO error, or the file is not an archive
+	 */
+	public static void listArchive(String archiveFile) throws IOException
+	{
+		ArrayList<Archive.Member> members = Archive.list(new File(archiveFile));
+		System.out.printf("%12s %12s  %s%n", "size", "compressed", "name");
+		for (Archive.Member member : members)
+			System.out.printf("%12d %12d  %s%n", member.getSize(), member.getLength(), member.getName());
+		System.out.println(members.size() + " files.");
+	}
+	
+	/**
+	 * Prints the measurements of the file operation that just ended as one JSON line,
+	 * and records them as JFR events
+	 * @param inputFile - the name of the file read
+	 * @param outputFile - the name of the file written
+	 */
+	private static void printMetrics(String inputFile, String outputFile)
+	{
+		metrics.setBytes(new File(inputFile).length(), new File(outputFile).length());
+		printMetrics();
+	}
+	
+	/**
+	 * Prints the measurements of the operation that just ended as one JSON line, after
+	 * the statistics of the code cache if there is one, and records them as JFR events
+	 */
+	private static void printMetrics()
+	{
+		if (null != codeCache)
+		{
+			System.out.println(codeCache);
+			metrics.setCache(codeCache.getHits(), codeCache.getMisses(), codeCache.getEvictions());
+		}
+		System.out.println(metrics.finish());
+	}
+	
+	/**
+	 * Notes the size of a buffer in the measurements of the file operation running now
+	 * @param bytes - the size of the buffer in bytes
+	 */
+	private static void noteBuffer(long bytes)
+	{
+		if (null != metrics)
+			metrics.noteBuffer(bytes);
+	}
+	
+	/**
+	 * Compresses a stream in one pass as a file of compressed blocks, each with its
+	 * own code, so the input never needs to be read twice. Nothing is printed, since
+	 * the output may be standard output.
+	 * @param in - the data to be compressed
+	 * @param out - receives the compressed blocks
+	 * @param threads - the number of threads compressing blocks
+	 * @param blockSize - the number of bytes in a block
+	 * @param memory - the number of bytes blocks may take up, or -1 for no limit
+	 * @throws IOException - IO error
+	 */
+	public static void compressStream(InputStream in, OutputStream out, int threads, int blockSize, long memory) throws IOException
+	{
+		BlockCompressor compressor = new BlockCompressor(threads, blockSize);
+		compressor.setMaxCodeLength(maxCodeLength);
+		compressor.setCodeCache(codeCache);
+		if (memory >= 0)
+			compressor.setMemoryBudget(memory);
+		try
+		{
+			compressor.compress(in, out);
+		}
+		finally
+		{
+			compressor.shutdown();
+		}
+	}
+	
+	/**
+	 * Decompresses a stream, one block or one buffer at a time. Files of compressed
+	 * blocks and single compressed files are both accepted. Nothing is printed, since
+	 * the output may be standard output.
+	 * @param in - the compressed data
+	 * @param out - receives the original data
+	 * @throws IOException - IO error, or the data is not compressed data
+	 */
+	public static void decompressStream(InputStream in, OutputStream out) throws IOException
+	{
+		InputStream input = new BufferedInputStream(in, BUFFER_SIZE);
+		input.mark(4);
+		int magic = new DataInputStream(input).readInt();
+		input.reset();
+		if (magic == BlockCompressor.MAGIC)
+		{
+			BlockCompressor.decompress(input, out);
+			return;
+		}
+		if (magic == AdaptiveHuffman.MAGIC)
+		{
+			AdaptiveHuffman.decompress(input, out);
+			return;
+		}
+		if (magic == ContextHuffman.MAGIC)
+		{
+			ContextHuffman.decompress(input, out);
+			return;
+		}
+		if (magic == PhraseHuffman.MAGIC)
+		{
+			PhraseHuffman.decompress(input, out);
+			return;
+		}
+		if (magic == InterleavedHuffman.MAGIC)
+		{
+			InterleavedHuffman.decompress(input, out);
+			return;
+		}
+		if (magic == StaticTable.MAGIC)
+		{
+			StaticTable.load(tableDir, StaticTable.readId(input)).decompress(input, out);
+			return;
+		}
+		
+		FileHeader header = FileHeader.read(new DataInputStream(input));
+		BitInput bits = new BitInput(input);
+		noteBuffer(BUFFER_SIZE);
+		if (header.getAlphabet() == FileHeader.ALPHABET_BYTES)
+			decodeBytes(header, bits, out);
+		else
+		{
+			Writer writer = openDecodedText(out, header.getAlphabet());
+			if (header.getAlphabet() == FileHeader.ALPHABET_CODE_POINTS)
+				decodeCodePoints(header, bits, writer);
+			else
+				decodeCharacters(header, bits, writer);
+			writer.flush();
+		}
+	}
+	
+	/**
+	 * Reads the file, counts the characters in it, and outputs info to user
 	 * @param inputFile - the name of the file to be compressed
 	 * @return the priority queue of mappings of character keys to their frequency values
-	 * @throws FileNotFoundException - file does not exist
+	 * @throws IOException - file IO error
+	 */
+	public static PriorityQueue<BinaryTree<CharacterMapping>> readFile(String inputFile) throws IOException
+	{
+		return readFile(inputFile, FileHeader.ALPHABET_CHARS);
+	}
+	
+	/**
+	 * Reads the file as characters or as bytes, counts the symbols in it, and outputs info to user.
+	 * In the byte alphabet the end of file symbol is added with a count of one.
+	 * @param inputFile - the name of the file to be compressed
+	 * @param mode - FileHeader.ALPHABET_CHARS or FileHeader.ALPHABET_BYTES
+	 * @return the priority queue of mappings of symbol keys to their frequency values
+	 * @throws IOException - file IO error
+	 */
+	public static PriorityQueue<BinaryTree<CharacterMapping>> readFile(String inputFile, int mode) throws IOException
+	{
+		return createForest(readCounts(inputFile, mode));
+	}
+	
+	/**
+	 * Reads the file as characters, as bytes or as code points, counts the symbols in it, and
+	 * outputs info to user. In the byte alphabet the end of file symbol is added with a count of one.
+	 * @param inputFile - the name of the file to be compressed
+	 * @param mode - FileHeader.ALPHABET_CHARS, FileHeader.ALPHABET_BYTES or FileHeader.ALPHABET_CODE_POINTS
+	 * @return the number of occurrences of each symbol, indexed by symbol, or for code
+	 *         points by their index in symbolIndex
+	 * @throws IOException - file IO error
+	 */
+	public static long[] readCounts(String inputFile, int mode) throws IOException
+	{
+		alphabet = mode;
+		long[] counts;
+		int[] order = null;
+		if (alphabet == FileHeader.ALPHABET_BYTES)
+		{
+			counts = countBytes(inputFile);
+			counts[EOF_SYMBOL] = 1;
+		}
+		else if (alphabet == FileHeader.ALPHABET_CODE_POINTS)
+		{
+			symbolIndex = new SymbolIndex();
+			counts = countCodePoints(inputFile, symbolIndex);
+			order = sortedIndices(symbolIndex);
+		}
+		else
+			counts = countCharacters(inputFile);
+		if (!showTables)
+			return counts;
+		
+		//output info
+		long chars = 0;
+		int types = 0;
+		System.out.println("Characters and their Frequencies:\n---------------------------------");
+		for (int i = 0; i < counts.length; i++) //characters come out sorted by value
+		{
+			int k = (null == order) ? i : order[i];
+			if (counts[k] == 0)
+				continue;
+			chars += counts[k];
+			types++;
+			System.out.println(symbolName((null == order) ? k : symbolIndex.symbolAt(k)) + " : " + counts[k]);
+		}
+		System.out.println("\nTotal number of characters in the file: " + chars);
+		System.out.println("Number of character types: " + types);
+		
+		return counts;
+	}
+	
+	/**
+	 * Creates the initial forest of one-node trees, one for every symbol that occurs
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @return the priority queue of mappings of symbol keys to their frequency values
+	 */
+	public static PriorityQueue<BinaryTree<CharacterMapping>> createForest(long[] counts)
+	{
+		PriorityQueue<BinaryTree<CharacterMapping>> forest = new PriorityQueue<BinaryTree<CharacterMapping>>();
+		for (int k = 0; k < counts.length; k++)
+		{
+			if (counts[k] == 0)
+				continue;
+			ArrayList<Character> chrs = new ArrayList<Character>(); //CharacterMapping takes a Character array for constructor
+			chrs.add((char) k);
+			forest.add( new BinaryTree<CharacterMapping>(new CharacterMapping(chrs, counts[k])) ); // create initial forest
+		}
+		return forest;
+	}
+	
+	/**
+	 * Counts how many times each character occurs in a file. The file is read in
+	 * large blocks straight into an array indexed by character, so nothing is
+	 * allocated per character.
+	 * @param inputFile - the name of the file to be counted
+	 * @return the number of occurrences of each character, indexed by character
+	 * @throws IOException - file IO error
+	 */
+	public static long[] countCharacters(String inputFile) throws IOException
+	{
+		long[] counts = new long[Character.MAX_VALUE + 1];
+		Reader reader = new FileReader(inputFile);
+		char[] buffer = new char[BUFFER_SIZE];
+		noteBuffer(2L * BUFFER_SIZE);
+		
+		int n = reader.read(buffer);
+		while (n != -1)
+		{
+			for (int i = 0; i < n; i++)
+				counts[buffer[i]]++;
+			n = reader.read(buffer);
+		}
+		reader.close();
+		return counts;
+	}
+	
+	/**
+	 * Counts how many times each code point occurs in a text file. Only the code
+	 * points that occur get a counter, numbered by a SymbolIndex, so a file with
+	 * thousands of CJK characters needs no table the size of all of Unicode.
+	 * @param inputFile - the name of the file to be counted
+	 * @param index - receives the index of each code point that occurs
+	 * @return the number of occurrences of each code point, indexed by its index
+	 * @throws IOException - file IO error
+	 */
+	public static long[] countCodePoints(String inputFile, SymbolIndex index) throws IOException
+	{
+		long[] counts = new long[256];
+		CodePointReader reader = new CodePointReader(openCodePoints(inputFile), BUFFER_SIZE);
+		noteBuffer(2L * BUFFER_SIZE);
+		
+		int codePoint = reader.read();
+		while (codePoint != -1)
+		{
+			int k = index.add(codePoint);
+			if (k == counts.length)
+				counts = Arrays.copyOf(counts, 2 * counts.length);
+			counts[k]++;
+			codePoint = reader.read();
+		}
+		reader.close();
+		return Arrays.copyOf(counts, index.size());
+	}
+	
+	/**
+	 * Opens a text file to be read as code points, in FileHeader.CODE_POINT_CHARSET
+	 * whatever the platform charset is. Bytes that are not valid in that charset
+	 * are an error rather than being replaced, since they could not be written back.
+	 * @param inputFile - the name of the file
+	 * @return the reader
+	 * @throws IOException - file IO error
+	 */
+	private static Reader openCodePoints(String inputFile) throws IOException
+	{
+		return new InputStreamReader(new FileInputStream(inputFile), FileHeader.CODE_POINT_CHARSET.newDecoder());
+	}
+	
+	/**
+	 * Orders the indices of a SymbolIndex by their symbols
+	 * @param index - the index
+	 * @return every index, in increasing order of symbol
+	 */
+	private static int[] sortedIndices(SymbolIndex index)
+	{
+		long[] keys = new long[index.size()];
+		for (int k = 0; k < keys.length; k++)
+			keys[k] = ((long) index.symbolAt(k) << 32) | k;
+		Arrays.sort(keys);
+		int[] order = new int[keys.length];
+		for (int i = 0; i < keys.length; i++)
+			order[i] = (int) keys[i];
+		return order;
+	}
+	
+	/**
+	 * Counts how many times each byte value occurs in a file, reading large blocks
+	 * of raw bytes with no charset decoding
+	 * @param inputFile - the name of the file to be counted
+	 * @return the number of occurrences of each byte, indexed by unsigned byte value,
+	 *         with one extra slot for the end of file symbol
+	 * @throws IOException - file IO error
+	 */
+	public static long[] countBytes(String inputFile) throws IOException
+	{
+		long[] counts = new long[EOF_SYMBOL + 1];
+		InputStream input = new FileInputStream(inputFile);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		noteBuffer(BUFFER_SIZE);
+		
+		int n = input.read(buffer);
+		while (n != -1)
+		{
+			for (int i = 0; i < n; i++)
+				counts[buffer[i] & 0xFF]++;
+			n = input.read(buffer);
+		}
+		input.close();
+		return counts;
+	}
+	
+	/**
+	 * Create a single binary tree to be used for the Huffman encoding. The two
+	 * lightest trees are found with a DaryHeap of (frequency, tree number) pairs,
+	 * so no comparison goes through BinaryTree.compareTo. The forest is left
+	 * holding only the finished tree.
+	 * @param initialForest - the priority queue of characters, prioritized by frequency
+	 * @return the single tree to be used for the Huffman encoding, empty if there are no characters
+	 */
+	public static BinaryTree<CharacterMapping> createEncodingTree(PriorityQueue<BinaryTree<CharacterMapping>> initialForest)
+	{
+		if (initialForest.isEmpty())
+			return new BinaryTree<CharacterMapping>();
+		
+		//Number the trees; merged trees get the numbers after the leaves
+		int n = initialForest.size();
+		ArrayList<BinaryTree<CharacterMapping>> trees = new ArrayList<BinaryTree<CharacterMapping>>(2 * n - 1);
+		long[] freqs = new long[n];
+		int[] numbers = new int[n];
+		for (BinaryTree<CharacterMapping> tree : initialForest)
+		{
+			freqs[trees.size()] = tree.getRoot().getElement().getFreq();
+			numbers[trees.size()] = trees.size();
+			trees.add(tree);
+		}
+		DaryHeap heap = new DaryHeap(HuffmanLengths.HEAP_ARITY, n);
+		heap.heapify(freqs, numbers, n);
+		
+		while(heap.size() > 1)
+		{
+			//find two smallest nodes
+			BinaryTree<CharacterMapping> tree1 = trees.get(heap.remove());
+			BinaryTree<CharacterMapping> tree2 = trees.get(heap.remove());
+			
+			//Combine data from root nodes
+			long size1 = tree1.getRoot().getElement().getFreq();
+			long size2 = tree2.getRoot().getElement().getFreq();
+			long newRootSize = size1 + size2;
+			ArrayList<Character> chars = tree1.getRoot().getElement().getCh();
+			ArrayList<Character> chars2 = tree2.getRoot().getElement().getCh();
+			ArrayList<Character> combinedCharacters = new ArrayList<Character>(chars);
+			combinedCharacters.addAll(chars2);
+			CharacterMapping combined = new CharacterMapping(combinedCharacters, newRootSize);
+			
+			//Merge the two nodes
+			tree1.merge(combined, tree1, tree2);
+			
+			//Add new tree to the heap
+			heap.add(newRootSize, trees.size());
+			trees.add(tree1);
+		}
+		
+		BinaryTree<CharacterMapping> huffTree = trees.get(heap.remove());
+		initialForest.clear();
+		initialForest.add(huffTree);
+		return huffTree;
+	}
+	
+	/**
+	 * Creates a map of encodings to characters and outputs this info to the user.
+	 * The tree only decides the length of each code; the codes themselves are
+	 * canonical so that the lengths alone are enough to decode the file.
+	 * @param huffTree - The Huffman tree used to encode
+	 */
+	public static void createEncodingTable(BinaryTree<CharacterMapping> huffTree)
+	{
+		canonical = createCanonicalCode(huffTree, maxCodeLength);
+		symbolCount = huffTree.isEmpty() ? 0 : huffTree.getRoot().getElement().getFreq();
+		if (alphabet == FileHeader.ALPHABET_BYTES)
+			symbolCount--; //the end of file symbol is not part of the data
+		
+		setCodeTables();
+		payloadBits = huffTree.isEmpty() ? 0 : codedBits(huffTree.getRoot());
+		printEncodingTable(huffTree.isEmpty() ? 0 : treeBits(huffTree.getRoot(), 0), false);
+	}
+
+	/**
+	 * Creates a map of encodings to characters straight from the symbol counts,
+	 * building the code lengths in linear time without a tree of symbol lists,
+	 * and outputs this info to the user. With a code cache, a cached code for
+	 * similar counts is used instead if it is good enough.
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 */
+	public static void createEncodingTable(long[] counts)
+	{
+		int[] lengths = null;
+		if (alphabet == FileHeader.ALPHABET_CODE_POINTS)
+		{
+			lengths = HuffmanLengths.build(counts);
+			canonical = createCodePointCode(counts, lengths);
+		}
+		else if (null != codeCache)
+		{
+			lengths = HuffmanLengths.build(counts);
+			canonical = codeCache.codeFor(counts, maxCodeLength);
+		}
+		else
+		{
+			lengths = HuffmanLengths.build(counts);
+			canonical = createCanonicalCode(counts, lengths, maxCodeLength);
+		}
+		symbolCount = 0;
+		for (long count : counts)
+			symbolCount += count;
+		if (alphabet == FileHeader.ALPHABET_BYTES)
+			symbolCount--; //the end of file symbol is not part of the data
+		
+		setCodeTables();
+		payloadBits = 0;
+		long treeBits = 0;
+		for (int s = 0; s < counts.length; s++)
+		{
+			if (counts[s] == 0)
+				continue;
+			payloadBits += counts[s] * codeLengths[s];
+			treeBits += counts[s] * (null == lengths ? codeLengths[s] : lengths[s]);
+		}
+		printEncodingTable(treeBits, null != codeCache && alphabet != FileHeader.ALPHABET_CODE_POINTS);
+	}
+
+	/**
+	 * Assigns canonical codes to code points, from counts and code lengths indexed
+	 * by their index in symbolIndex
+	 * @param counts - the number of occurrences of each code point, by index
+	 * @param lengths - the Huffman code length of each code point, by index
+	 * @return the canonical code, over the code points themselves
+	 */
+	private static CanonicalCode createCodePointCode(long[] counts, int[] lengths)
+	{
+		CanonicalCode indexed = createCanonicalCode(counts, lengths, maxCodeLength);
+		int[] symbolArray = new int[indexed.size()];
+		int[] lengthArray = new int[indexed.size()];
+		for (int i = 0; i < indexed.size(); i++)
+		{
+			symbolArray[i] = symbolIndex.symbolAt(indexed.getSymbol(i));
+			lengthArray[i] = indexed.getLength(i);
+		}
+		return new CanonicalCode(symbolArray, lengthArray);
+	}
+
+	/**
+	 * Converts the canonical codes to bits for the encoder and to strings for display.
+	 * For code points the encoder's tables are indexed by symbolIndex.
+	 */
+	private static void setCodeTables()
+	{
+		if (alphabet == FileHeader.ALPHABET_CODE_POINTS)
+		{
+			codeBits = new long[symbolIndex.size()];
+			codeLengths = new int[symbolIndex.size()];
+			for (int i = 0; i < canonical.size(); i++)
+			{
+				int k = symbolIndex.indexOf(canonical.getSymbol(i));
+				codeBits[k] = canonical.getCode(i);
+				codeLengths[k] = canonical.getLength(i);
+			}
+		}
+		else
+		{
+			codeBits = canonical.getCodeTable(canonical.alphabetSize());
+			codeLengths = canonical.getLengthTable(canonical.alphabetSize());
+		}
+		codes = new TreeMap<Integer, String>();
+		if (!showTables)
+			return;
+		for (int i = 0; i < canonical.size(); i++)
+		{
+			int symbol = canonical.getSymbol(i);
+			int len = canonical.getLength(i);
+			String bits = Long.toBinaryString(canonical.getCode(i));
+			while (bits.length() < len)
+				bits = "0" + bits;
+			codes.put(symbol, bits);
+		}
+	}
+
+	/**
+	 * Outputs the encodings to the user if asked to, and what limiting the code lengths
+	 * or reusing a cached code cost
+	 * @param treeBits - the encoded size in bits with codes of unlimited length
+	 * @param cached - whether the code came from the code cache
+	 */
+	private static void printEncodingTable(long treeBits, boolean cached)
+	{
+		if (showTables)
+		{
+			System.out.println();
+			System.out.println("Characters and their Encodings:");
+			System.out.println("-------------------------------");
+			for (Integer key: codes.keySet())
+			{
+				System.out.println(symbolName(key) + " : " + codes.get(key));
+			}
+		}
+		if (payloadBits != treeBits)
+			System.out.printf("%n%s: %d bits of data instead of %d (%.3f%% larger).%n",
+					"Codes limited to " + maxCodeLength + " bits" + (cached ? " or reused from the cache" : ""),
+					payloadBits, treeBits, 100.0 * (payloadBits - treeBits) / treeBits);
+	}
+
+	/**
+	 * Assigns canonical codes using the code lengths given by a Huffman tree
+	 * @param huffTree - The Huffman tree used to encode
+	 * @return the canonical code
+	 */
+	public static CanonicalCode createCanonicalCode(BinaryTree<CharacterMapping> huffTree)
+	{
+		return createCanonicalCode(huffTree, CanonicalCode.MAX_CODE_LENGTH);
+	}
+
+	/**
+	 * Assigns canonical codes using the code lengths given by a Huffman tree. If
+	 * the tree is deeper than the limit, the lengths are replaced by the optimal
+	 * lengths within the limit, found by package-merge.
+	 * @param huffTree - The Huffman tree used to encode
+	 * @param maxLength - the longest code length allowed
+	 * @return the canonical code
+	 */
+	public static CanonicalCode createCanonicalCode(BinaryTree<CharacterMapping> huffTree, int maxLength)
+	{
+		ArrayList<Integer> symbols = new ArrayList<Integer>();
+		ArrayList<Integer> lengths = new ArrayList<Integer>();
+		ArrayList<Long> freqs = new ArrayList<Long>();
+		CanonicalCode.lengthsOf(huffTree, symbols, lengths, freqs);
+		
+		int[] symbolArray = new int[symbols.size()];
+		int[] lengthArray = new int[lengths.size()];
+		long[] freqArray = new long[freqs.size()];
+		int deepest = 0;
+		for (int i = 0; i < symbolArray.length; i++)
+		{
+			symbolArray[i] = symbols.get(i);
+			lengthArray[i] = lengths.get(i);
+			freqArray[i] = freqs.get(i);
+			deepest = Math.max(deepest, lengthArray[i]);
+		}
+		if (deepest > maxLength)
+			lengthArray = PackageMerge.limitLengths(freqArray, maxLength);
+		return new CanonicalCode(symbolArray, lengthArray);
+	}
+
+	/**
+	 * Assigns canonical codes straight from the symbol counts, with code lengths
+	 * built in linear time by HuffmanLengths and limited by package-merge if need be
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @param maxLength - the longest code length allowed
+	 * @return the canonical code
+	 */
+	public static CanonicalCode createCanonicalCode(long[] counts, int maxLength)
+	{
+		return createCanonicalCode(counts, HuffmanLengths.build(counts), maxLength);
+	}
+
+	/**
+	 * Assigns canonical codes using code lengths indexed by symbol
+	 * @param counts - the number of occurrences of each symbol, indexed by symbol
+	 * @param lengths - the Huffman code length of each symbol, 0 for symbols that do not occur
+	 * @param maxLength - the longest code length allowed
+	 * @return the canonical code
 	 */
-	public static PriorityQueue<BinaryTree<CharacterMapping>> readFile(String inputFile) throws FileNotFoundException
+	static CanonicalCode createCanonicalCode(long[] counts, int[] lengths, int maxLength)
 	{
-		Scanner scan = new Scanner(new FileReader(inputFile));
-		scan.useDelimiter("");
-		Map<Character, Integer> map = new TreeMap<Character, Integer>();//use TreeMap to keep characters
-																		//sorted by ascii value
-		
-		//Obtain characters and character counts 
-		while (scan.hasNext())
+		int n = 0;
+		int deepest = 0;
+		for (int s = 0; s < lengths.length; s++)
 		{
-			Character key = scan.next().charAt(0);   
-
-			if ( !map.containsKey(key) ) //New character found
-				map.put(key, 1);
-			else
-				map.put( key, (map.get(key) + 1) ); //Increase count for a duplicate character
+			if (lengths[s] == 0)
+				continue;
+			n++;
+			deepest = Math.max(deepest, lengths[s]);
 		}
-		scan.close();
-		
-		//setup for output and initial forest
-		int chars = 0;
-		PriorityQueue<BinaryTree<CharacterMapping>> forest = new PriorityQueue<BinaryTree<CharacterMapping>>();
 		
-		System.out.println("Characters and their Frequencies:\n---------------------------------");
-		for (Character k : map.keySet())
+		int[] symbolArray = new int[n];
+		int[] lengthArray = new int[n];
+		long[] freqArray = new long[n];
+		int k = 0;
+		for (int s = 0; s < lengths.length; s++)
 		{
-			chars += map.get(k);
-			System.out.println(k + " : " + map.get(k));
-			
-			ArrayList<Character> chrs = new ArrayList<Character>(); //CharacterMapping takes a Character array for constructor
-			chrs.add(k);
-			forest.add( new BinaryTree<CharacterMapping>(new CharacterMapping(chrs, map.get(k))) ); // create initial forest
+			if (lengths[s] == 0)
+				continue;
+			symbolArray[k] = s;
+			lengthArray[k] = lengths[s];
+			freqArray[k++] = counts[s];
 		}
-		System.out.println("\nTotal number of characters in the file: " + chars);
-		System.out.println("Number of character types: " + map.size());
-		
-		// include pseudo-EOF character
-		ArrayList<Character> eof = new ArrayList<Character>();
-		eof.add('^');
-		forest.add( new BinaryTree<CharacterMapping>(new CharacterMapping(eof, 1)) );
-		
-		return forest;
+		if (deepest > maxLength)
+			lengthArray = PackageMerge.limitLengths(freqArray, maxLength);
+		return new CanonicalCode(symbolArray, lengthArray);
 	}
-	
+
 	/**
-	 * Create a single binary tree to be used for the Huffman encoding
-	 * @param initialForest - the priority queue of characters, prioritized by frequency
-	 * @return the single tree to be used for the Huffman encoding
+	 * Recursively adds up the number of bits needed to encode every occurrence of
+	 * the symbols below a node
+	 * @param node - the root of a subtree of the Huffman tree
+	 * @return the encoded size in bits of the symbols in the subtree
 	 */
-	public static BinaryTree<CharacterMapping> createEncodingTree(PriorityQueue<BinaryTree<CharacterMapping>> initialForest)
+	private static long codedBits(BinaryNode<CharacterMapping> node)
 	{
-		while(initialForest.size() > 1)
-		{
-			//find two smallest nodes
-			BinaryTree<CharacterMapping> tree1 = initialForest.remove();
-			BinaryTree<CharacterMapping> tree2 = initialForest.remove();
-			
-			//Combine data from root nodes
-			int size1 = tree1.getRoot().getElement().getFreq();
-			int size2 = tree2.getRoot().getElement().getFreq();
-			int newRootSize = size1 + size2;
-			ArrayList<Character> chars = tree1.getRoot().getElement().getCh();
-			ArrayList<Character> chars2 = tree2.getRoot().getElement().getCh();
-			ArrayList<Character> combinedCharacters = new ArrayList<Character>(chars);
-			combinedCharacters.addAll(chars2);
-			CharacterMapping combined = new CharacterMapping(combinedCharacters, newRootSize);
-			
-			//Merge the two nodes
-			tree1.merge(combined, tree1, tree2);
-			
-			//Add new tree to the forest
-			initialForest.add(tree1);
-		}
-		
-		return initialForest.element();
+		if (null == node.getLeft() && null == node.getRight())
+			return node.getElement().getFreq() * codeLengths[node.getElement().getCh().get(0)];
+		long bits = 0;
+		if (null != node.getLeft())
+			bits += codedBits(node.getLeft());
+		if (null != node.getRight())
+			bits += codedBits(node.getRight());
+		return bits;
 	}
-	
+
 	/**
-	 * Creates a map of encodings to characters and outputs this info to the user
-	 * @param huffTree - The Huffman tree used to encode
-	 * @return a map of character/encoding string pairs
+	 * Recursively adds up the number of bits the symbols below a node would take
+	 * up with codes as long as their depth in the Huffman tree
+	 * @param node - the root of a subtree of the Huffman tree
+	 * @param depth - the depth of node
+	 * @return the encoded size in bits of the symbols in the subtree
 	 */
-	public static void createEncodingTable(BinaryTree<CharacterMapping> huffTree)
+	private static long treeBits(BinaryNode<CharacterMapping> node, int depth)
 	{
-		String code = "";
-		codes = new TreeMap<Character, String>();
-
-		System.out.println();
-		findCodes(huffTree.getRoot(), code);
-		
-		System.out.println("Characters and their Encodings:");
-		System.out.println("-------------------------------");
-		for (Character key: codes.keySet())
-		{
-			System.out.println("" + key + " : " + codes.get(key));
-		}
+		if (null == node.getLeft() && null == node.getRight())
+			return node.getElement().getFreq() * Math.max(1, depth);
+		long bits = 0;
+		if (null != node.getLeft())
+			bits += treeBits(node.getLeft(), depth + 1);
+		if (null != node.getRight())
+			bits += treeBits(node.getRight(), depth + 1);
+		return bits;
 	}
 
 	/**
@@ -184,7 +1378,7 @@ public class Proj3 {
 		}
 		if (null == huffTree.getLeft() && null == huffTree.getRight()) //Leaf node; add to map
 		{
-			codes.put(huffTree.getElement().getCh().get(0), code);
+			codes.put((int) huffTree.getElement().getCh().get(0), code);
 		}
 		
 		if (null != huffTree.getLeft() ) //Check left tree
@@ -219,114 +1413,591 @@ public class Proj3 {
 		if (f.exists())
 			f.delete();
 		
-		Scanner scan = new Scanner(new FileReader(inFile));
-		scan.useDelimiter("");
+		f.createNewFile();
+		OutputStream file = new BufferedOutputStream(new FileOutputStream(f));
+		DataOutputStream header = new DataOutputStream(file);
+		new FileHeader(alphabet, symbolCount, canonical).write(header);
+		header.flush();
+		
+		BitOutput output = new BitOutput(file);
+		if (alphabet == FileHeader.ALPHABET_BYTES)
+			encodeBytes(inFile, output);
+		else if (alphabet == FileHeader.ALPHABET_CODE_POINTS)
+			encodeCodePoints(inFile, output);
+		else
+			encodeCharacters(inFile, output);
+		
+		//Pad out the last byte
+		output.close();
+		System.out.println("File compression complete.\n");
+	}
+	
+	/**
+	 * Writes the code of every character of a text file
+	 * @param inFile - the name of the input file
+	 * @param output - the compressed bit stream
+	 * @throws IOException - file IO error
+	 */
+	private static void encodeCharacters(String inFile, BitOutput output) throws IOException
+	{
+		Reader reader = new FileReader(inFile);
+		char[] buffer = new char[BUFFER_SIZE];
+		noteBuffer(2L * BUFFER_SIZE);
 		
-		//Create bit string for the data in the input file
-		StringBuffer code = new StringBuffer("");
-		while (scan.hasNext())
+		//Pack the code for each character straight into the output
+		int n = reader.read(buffer);
+		while (n != -1)
 		{
-			String k = scan.next();
-			Character key = k.charAt(0);
-			StringBuffer code2 = new StringBuffer(codes.get(key));
-			
-			//Add characters one at a time to total bit string so that no bits are backwards
-			for (int i=0; i < code2.length(); i++)
-				code.append(code2.charAt(i));
+			for (int i = 0; i < n; i++)
+			{
+				char key = buffer[i];
+				output.writeBits(codeBits[key], codeLengths[key]);
+			}
+			n = reader.read(buffer);
 		}
-		scan.close();
+		reader.close();
+	}
+	
+	/**
+	 * Writes the code of every code point of a text file, looking each one up in symbolIndex
+	 * @param inFile - the name of the input file
+	 * @param output - the compressed bit stream
+	 * @throws IOException - file IO error
+	 */
+	private static void encodeCodePoints(String inFile, BitOutput output) throws IOException
+	{
+		CodePointReader reader = new CodePointReader(openCodePoints(inFile), BUFFER_SIZE);
+		noteBuffer(2L * BUFFER_SIZE);
 		
-		//Include pseudo-eof character to bit string
-		String pseudoeof = codes.get('^');
-		for (int i=0; i < pseudoeof.length(); i++)
-			code.append(pseudoeof.charAt(i));
+		int codePoint = reader.read();
+		while (codePoint != -1)
+		{
+			int k = symbolIndex.indexOf(codePoint);
+			if (k < 0)
+			{
+				reader.close();
+				throw new IOException("File changed while it was being compressed");
+			}
+			output.writeBits(codeBits[k], codeLengths[k]);
+			codePoint = reader.read();
+		}
+		reader.close();
+	}
+	
+	/**
+	 * Writes the code of every byte of a file, followed by the end of file symbol
+	 * @param inFile - the name of the input file
+	 * @param output - the compressed bit stream
+	 * @throws IOException - file IO error
+	 */
+	private static void encodeBytes(String inFile, BitOutput output) throws IOException
+	{
+		InputStream input = new FileInputStream(inFile);
+		byte[] buffer = new byte[BUFFER_SIZE];
+		noteBuffer(BUFFER_SIZE);
 		
-		//Calculate the amount of padding needed to get a whole number of bytes
-		int padding = 8 - Math.abs((8 - code.length()) % 8);
+		int n = input.read(buffer);
+		while (n != -1)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				int key = buffer[i] & 0xFF;
+				output.writeBits(codeBits[key], codeLengths[key]);
+			}
+			n = input.read(buffer);
+		}
+		input.close();
+		output.writeBits(codeBits[EOF_SYMBOL], codeLengths[EOF_SYMBOL]);
+	}
+
+	/**
+	 * Writes the raw bytes of a file to a compressed file through memory mappings.
+	 * The size of the compressed file is known from the code, so the output is
+	 * mapped at its final size and filled in directly.
+	 * @param inFile - the name of the input file
+	 * @param compressedFile - the name of the file that is encoded and compressed
+	 * @throws IOException - file IO error
+	 */
+	public static void encodeFileMapped(String inFile, String compressedFile) throws IOException
+	{
+		System.out.println("\nCompressing \"" + inFile + "\" into \"" + compressedFile + "\" through mapped files.");
+		System.out.println("This may take a while...\n");
 		
-		for (int i=1; i <= padding; i++)
-			code.append("0");
+		FileChannel input = FileChannel.open(Paths.get(inFile), StandardOpenOption.READ);
+		FileChannel output = FileChannel.open(Paths.get(compressedFile), StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			FileHeader header = new FileHeader(FileHeader.ALPHABET_BYTES, symbolCount, canonical);
+			ByteArrayOutputStream headerBytes = new ByteArrayOutputStream(header.size());
+			header.write(new DataOutputStream(headerBytes));
+			output.write(ByteBuffer.wrap(headerBytes.toByteArray()), 0);
 			
-		int numBytes = code.length() / 8;
-		byte[] bytes = new byte[numBytes];
-		for (int i = 0; i <= numBytes - 1 ; i++)
+			MappedWindows source = new MappedWindows(input, FileChannel.MapMode.READ_ONLY, 0, input.size());
+			BitOutput bits = new BitOutput(new MappedWindows(output, FileChannel.MapMode.READ_WRITE,
+					header.size(), (payloadBits + 7) / 8));
+			
+			//Pack the code for each byte straight into the mapped output
+			ByteBuffer window = source.next();
+			while (null != window)
+			{
+				while (window.hasRemaining())
+				{
+					int key = window.get() & 0xFF;
+					bits.writeBits(codeBits[key], codeLengths[key]);
+				}
+				window = source.next();
+			}
+			bits.writeBits(codeBits[EOF_SYMBOL], codeLengths[EOF_SYMBOL]);
+			bits.close();
+		}
+		finally
 		{
-			String codeByte = code.substring(i*8, i*8 + 8);
-			bytes[i] = (byte) Integer.parseInt(codeByte,2);
+			input.close();
+			output.close();
 		}
-		
-		f.createNewFile();
-		FileOutputStream output = new FileOutputStream(f);
-		output.write(bytes);	
-		output.close();
 		System.out.println("File compression complete.\n");
 	}
 
 	/**
-	 * Decodes a file which has been encoded by the Huffman algorithm
+	 * Decodes a file of raw bytes through memory mappings. The output is mapped
+	 * at the original length stored in the header and filled in directly.
 	 * @param compressedFile - the name of the file which has been compressed
 	 * @param decompressedFile - the name of the file that is to be decoded into
-	 * @param encodingTree - the Huffman encoding tree
-	 * @throws IOException - file IO error
+	 * @throws IOException - file IO error, or the file is not a valid compressed file of bytes
+	 */
+	public static void decodeFileMapped(String compressedFile, String decompressedFile) throws IOException
+	{
+		metrics = new Metrics("decompress");
+		metrics.startPhase("header");
+		System.out.println("Reading encoded file: \""+ compressedFile + "\"...\n");
+		FileChannel input = FileChannel.open(Paths.get(compressedFile), StandardOpenOption.READ);
+		FileChannel output = null;
+		try
+		{
+			FileHeader header = FileHeader.read(new DataInputStream(new BufferedInputStream(Channels.newInputStream(input))));
+			if (header.getAlphabet() != FileHeader.ALPHABET_BYTES)
+				throw new IOException("Only files compressed as bytes can be decompressed through mapped files");
+			
+			System.out.println("Decompressing \"" + compressedFile + "\" into \"" + decompressedFile + "\" through mapped files");
+			System.out.println("This may take a while...\n");
+			metrics.startPhase("decode");
+			metrics.setSymbols(header.getLength());
+			
+			output = FileChannel.open(Paths.get(decompressedFile), StandardOpenOption.CREATE,
+					StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.READ, StandardOpenOption.WRITE);
+			BitInput bits = new BitInput(new MappedWindows(input, FileChannel.MapMode.READ_ONLY,
+					header.size(), input.size() - header.size()));
+			MappedWindows target = new MappedWindows(output, FileChannel.MapMode.READ_WRITE, 0, header.getLength());
+			DecodeTable table = decodeTableFor(header.getCode());
+			
+			//Look up whole codes and store each byte straight into the mapped output
+			ByteBuffer window = target.next();
+			while (null != window)
+			{
+				while (window.hasRemaining())
+				{
+					int symbol = table.decode(bits);
+					if (symbol < 0 || symbol >= EOF_SYMBOL)
+						throw new IOException("Compressed file is truncated or corrupt");
+					window.put((byte) symbol);
+				}
+				window = target.next();
+			}
+			if (table.decode(bits) != EOF_SYMBOL)
+				throw new IOException("Compressed file is missing its end of file symbol");
+		}
+		finally
+		{
+			input.close();
+			if (null != output)
+				output.close();
+		}
+		System.out.println("File decompression complete.");
+		printMetrics(compressedFile, decompressedFile);
+	}
+
+	/**
+	 * Decodes a file which has been encoded by the Huffman algorithm. The code is
+	 * rebuilt from the header of the compressed file.
+	 * @param compressedFile - the name of the file which has been compressed
+	 * @param decompressedFile - the name of the file that is to be decoded into
+	 * @throws IOException - file IO error, or the file is not a valid compressed file
 	 */
-	public static void decodeFile(String compressedFile, String decompressedFile, BinaryTree<CharacterMapping> encodingTree) throws IOException {
+	public static void decodeFile(String compressedFile, String decompressedFile) throws IOException {
+	
+		metrics = new Metrics("decompress");
+		metrics.startPhase("header");
+		decodeAnyFile(compressedFile, decompressedFile);
+		printMetrics(compressedFile, decompressedFile);
+	}
 	
+	/**
+	 * Decodes a compressed file of any kind: blocks, interleaved streams, adaptive codes, context tables,
+	 * phrases, a pre-trained table, or a single code
+	 * @param compressedFile - the name of the file which has been compressed
+	 * @param decompressedFile - the name of the file that is to be decoded into
+	 * @throws IOException - file IO error, or the file is not a valid compressed file
+	 */
+	private static void decodeAnyFile(String compressedFile, String decompressedFile) throws IOException
+	{
 		System.out.println("Reading encoded file: \""+ compressedFile + "\"...\n");
 		File f = new File(decompressedFile);
 		if (f.exists())
 			f.delete();
 		
-		//Read encoded file
-		StringBuffer bitString = new StringBuffer("");
-		FileInputStream input = new FileInputStream(compressedFile);
-		while (input.available() > 0)
-		{
-			byte data = (byte) input.read();
-			String bits = Integer.toBinaryString(( data+256 ) % 256);
-			int leadingZeros = 8 - bits.length();
-			StringBuffer pad = new StringBuffer("");
-			for (int i=1; i <= leadingZeros; i++)
-				pad.append("0");
-			pad.append(bits);
-			bitString.append(pad);
-				
+		InputStream file = new BufferedInputStream(new FileInputStream(compressedFile));
+		
+		//Files of compressed blocks have their own layout
+		file.mark(4);
+		int magic = new DataInputStream(file).readInt();
+		file.reset();
+		if (magic == BlockCompressor.MAGIC)
+		{
+			file.close();
+			System.out.println("Decompressing blocks of \"" + compressedFile + "\" into \"" + decompressedFile + "\"");
+			metrics.startPhase("blocks");
+			BlockCompressor decompressor = new BlockCompressor(Runtime.getRuntime().availableProcessors());
+			try
+			{
+				decompressor.decompress(new File(compressedFile), f);
+			}
+			finally
+			{
+				decompressor.shutdown();
+			}
+			System.out.println("File decompression complete.");
+			metrics.setSymbols(f.length());
+			return;
+		}
+		if (magic == StaticTable.MAGIC)
+		{
+			metrics.startPhase("table");
+			StaticTable table = StaticTable.load(tableDir, StaticTable.readId(file));
+			System.out.println("Decompressing \"" + compressedFile + "\" into \"" + decompressedFile + "\" with table "
+					+ String.format("%08x", table.getId()));
+			metrics.startPhase("decode");
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(f));
+			try
+			{
+				table.decompress(file, output);
+			}
+			finally
+			{
+				file.close();
+				output.close();
+			}
+			System.out.println("File decompression complete.");
+			metrics.setSymbols(f.length());
+			return;
+		}
+		if (magic == ContextHuffman.MAGIC)
+		{
+			System.out.println("Decompressing context tables of \"" + compressedFile + "\" into \"" + decompressedFile + "\"");
+			metrics.startPhase("decode");
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(f));
+			try
+			{
+				ContextHuffman.decompress(file, output);
+			}
+			finally
+			{
+				file.close();
+				output.close();
+			}
+			System.out.println("File decompression complete.");
+			metrics.setSymbols(f.length());
+			return;
+		}
+		if (magic == PhraseHuffman.MAGIC)
+		{
+			System.out.println("Decompressing phrases of \"" + compressedFile + "\" into \"" + decompressedFile + "\"");
+			metrics.startPhase("decode");
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(f));
+			try
+			{
+				PhraseHuffman.decompress(file, output);
+			}
+			finally
+			{
+				file.close();
+				output.close();
+			}
+			System.out.println("File decompression complete.");
+			metrics.setSymbols(f.length());
+			return;
+		}
+		if (magic == InterleavedHuffman.MAGIC)
+		{
+			System.out.println("Decompressing interleaved streams of \"" + compressedFile + "\" into \"" + decompressedFile + "\"");
+			metrics.startPhase("decode");
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(f));
+			try
+			{
+				InterleavedHuffman.decompress(file, output);
+			}
+			finally
+			{
+				file.close();
+				output.close();
+			}
+			System.out.println("File decompression complete.");
+			metrics.setSymbols(f.length());
+			return;
+		}
+		if (magic == AdaptiveHuffman.MAGIC)
+		{
+			System.out.println("Decompressing adaptive codes of \"" + compressedFile + "\" into \"" + decompressedFile + "\"");
+			metrics.startPhase("decode");
+			OutputStream output = new BufferedOutputStream(new FileOutputStream(f));
+			try
+			{
+				AdaptiveHuffman.decompress(file, output);
+			}
+			finally
+			{
+				file.close();
+				output.close();
+			}
+			System.out.println("File decompression complete.");
+			metrics.setSymbols(f.length());
+			return;
 		}
-		input.close();
 		
-		System.out.println("Deompressing \"" + compressedFile + "\" into \"" + decompressedFile + "\"");
+		FileHeader header = FileHeader.read(new DataInputStream(file));
+		
+		System.out.println("Decompressing \"" + compressedFile + "\" into \"" + decompressedFile + "\"");
 		System.out.println("This may take a while...\n");
+		metrics.startPhase("decode");
+		metrics.setSymbols(header.getLength());
 		
+		BitInput input = new BitInput(file);
+		noteBuffer(BUFFER_SIZE);
 		f.createNewFile();
-		PrintWriter writer = new PrintWriter(f);
-		BinaryNode<CharacterMapping> node = encodingTree.getRoot();
-		
-		//Traverse the Huffman tree using the string of bits
-		for (int i = 0; i < bitString.length(); i++) //Tree was not well formed if all bits are read unless there
-		{											 //was no bit string padding added
-			char bit = bitString.charAt(i);
-		
-			//Change node that is being looked at
-			if (bit == '0')
-				node = node.getLeft();
+		try
+		{
+			if (header.getAlphabet() == FileHeader.ALPHABET_BYTES)
+			{
+				OutputStream output = new FileOutputStream(f);
+				try
+				{
+					decodeBytes(header, input, output);
+				}
+				finally
+				{
+					output.close();
+				}
+			}
 			else
-				node = node.getRight();
-				
-			//Determine whether or not to stop reading bits or write to the file
-			if (null == node.getLeft() && null == node.getRight())
 			{
-				if (node.getElement().getCh().get(0) == '^')
-						break;
+				PrintWriter writer = new PrintWriter(openDecodedText(new FileOutputStream(f), header.getAlphabet()));
+				try
+				{
+					if (header.getAlphabet() == FileHeader.ALPHABET_CODE_POINTS)
+						decodeCodePoints(header, input, writer);
+					else
+						decodeCharacters(header, input, writer);
+				}
+				finally
+				{
+					writer.close();
+				}
+			}
+		}
+		finally
+		{
+			input.close();
+		}
+		System.out.println("File decompression complete.");
+	}
+	
+	/**
+	 * Opens a buffered writer for decoded text, in FileHeader.CODE_POINT_CHARSET for
+	 * code points and in the platform charset for characters
+	 * @param out - the stream that is decoded into
+	 * @param alphabet - FileHeader.ALPHABET_CHARS or FileHeader.ALPHABET_CODE_POINTS
+	 * @return the writer
+	 */
+	private static Writer openDecodedText(OutputStream out, int alphabet)
+	{
+		Writer writer = (alphabet == FileHeader.ALPHABET_CODE_POINTS)
+				? new OutputStreamWriter(out, FileHeader.CODE_POINT_CHARSET) : new OutputStreamWriter(out);
+		noteBuffer(2L * BUFFER_SIZE);
+		return new BufferedWriter(writer, BUFFER_SIZE);
+	}
+	
+	/**
+	 * Decodes part of a file of compressed blocks, using its block index to skip
+	 * the blocks outside the range
+	 * @param compressedFile - the name of the file of compressed blocks
+	 * @param decompressedFile - the name of the file that receives the range
+	 * @param start - the position in the original file of the first byte wanted
+	 * @param length - the number of bytes wanted
+	 * @param threads - the number of threads decoding blocks
+	 * @throws IOException - file IO error, or the range is outside the original file
+	 */
+	public static void decompressRange(String compressedFile, String decompressedFile, long start, long length, int threads) throws IOException
+	{
+		System.out.println("Decompressing bytes " + start + " to " + (start + length) + " of \""
+				+ compressedFile + "\" into \"" + decompressedFile + "\"");
+		metrics = new Metrics("decompress");
+		metrics.startPhase("range");
+		BlockCompressor decompressor = new BlockCompressor(threads);
+		long read;
+		try
+		{
+			read = decompressor.decompressRange(new File(compressedFile), start, length, new File(decompressedFile));
+		}
+		finally
+		{
+			decompressor.shutdown();
+		}
+		System.out.println("File decompression complete.");
+		metrics.setSymbols(length);
+		metrics.setBytes(read, new File(decompressedFile).length());
+		metrics.setPartial();
+		printMetrics();
+	}
+	
+	/**
+	 * Decodes every character of a text file
+	 * @param header - the header of the compressed file
+	 * @param input - the compressed bits that follow the header
+	 * @param writer - receives the decoded characters
+	 * @throws IOException - file IO error, or the compressed data is corrupt
+	 */
+	public static void decodeCharacters(FileHeader header, BitInput input, Writer writer) throws IOException
+	{
+		//Look up whole codes in the decoding table until every character is written
+		long length = header.getLength();
+		if (length > 0)
+		{
+			DecodeTable table = decodeTableFor(header.getCode());
+			for (long i = 0; i < length; i++)
+			{
+				int symbol = table.decode(input);
+				if (symbol == -1)
+					throw new IOException("Compressed file is truncated or corrupt");
+				writer.write(symbol);
+			}
+		}
+	}
+	
+	/**
+	 * Decodes every code point of a text file, writing supplementary characters as surrogate pairs
+	 * @param header - the header of the compressed file
+	 * @param input - the compressed bits that follow the header
+	 * @param writer - receives the decoded characters
+	 * @throws IOException - file IO error, or the compressed data is corrupt
+	 */
+	public static void decodeCodePoints(FileHeader header, BitInput input, Writer writer) throws IOException
+	{
+		long length = header.getLength();
+		if (length > 0)
+		{
+			DecodeTable table = decodeTableFor(header.getCode());
+			for (long i = 0; i < length; i++)
+			{
+				int symbol = table.decode(input);
+				if (symbol == -1)
+					throw new IOException("Compressed file is truncated or corrupt");
+				if (symbol < Character.MIN_SUPPLEMENTARY_CODE_POINT)
+					writer.write(symbol);
 				else
 				{
-					writer.write(node.getElement().getCh().get(0));
-					node = encodingTree.getRoot();
+					writer.write(Character.highSurrogate(symbol));
+					writer.write(Character.lowSurrogate(symbol));
 				}
 			}
-		}	
+		}
+	}
+	
+	/**
+	 * Decodes every byte of a file and checks that the end of file symbol follows them
+	 * @param header - the header of the compressed file
+	 * @param input - the compressed bits that follow the header
+	 * @param output - the stream that is decoded into
+	 * @throws IOException - file IO error, or the compressed data is corrupt
+	 */
+	public static void decodeBytes(FileHeader header, BitInput input, OutputStream output) throws IOException
+	{
+		byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, header.getLength())];
+		noteBuffer(buffer.length);
 		
-		writer.close();
-		System.out.println("File decompression complete.");
-
+		DecodeTable table = decodeTableFor(header.getCode());
+		long remaining = header.getLength();
+		while (remaining > 0)
+		{
+			int n = (int) Math.min(remaining, buffer.length);
+			decodeBytes(table, input, buffer, n);
+			output.write(buffer, 0, n);
+			remaining -= n;
+		}
+		
+		if (table.decode(input) != EOF_SYMBOL)
+			throw new IOException("Compressed file is missing its end of file symbol");
+	}
+	
+	/**
+	 * Decodes every byte of a file straight into an array and checks that the end
+	 * of file symbol follows them
+	 * @param header - the header of the compressed file
+	 * @param input - the compressed bits that follow the header
+	 * @param target - receives the decoded bytes, and holds at least header.getLength() of them
+	 * @throws IOException - the compressed data is corrupt
+	 */
+	public static void decodeBytes(FileHeader header, BitInput input, byte[] target) throws IOException
+	{
+		DecodeTable table = decodeTableFor(header.getCode());
+		decodeBytes(table, input, target, (int) header.getLength());
+		if (table.decode(input) != EOF_SYMBOL)
+			throw new IOException("Compressed file is missing its end of file symbol");
+	}
+	
+	/**
+	 * Decodes bytes into the start of an array
+	 * @param table - the decoding table
+	 * @param input - the compressed bits
+	 * @param target - receives the decoded bytes
+	 * @param n - the number of bytes to decode
+	 * @throws IOException - the compressed data is corrupt
+	 */
+	private static void decodeBytes(DecodeTable table, BitInput input, byte[] target, int n) throws IOException
+	{
+		for (int i = 0; i < n; i++)
+		{
+			int symbol = table.decode(input);
+			if (symbol < 0 || symbol >= EOF_SYMBOL)
+				throw new IOException("Compressed file is truncated or corrupt");
+			target[i] = (byte) symbol;
+		}
+	}
+	
+	/**
+	 * Gets the decoding table for a code, from the code cache if there is one
+	 * @param code - the code
+	 * @return the decoding table
+	 */
+	static DecodeTable decodeTableFor(CanonicalCode code)
+	{
+		CodeCache cache = codeCache;
+		return (null == cache) ? new DecodeTable(code) : cache.decoderFor(code);
+	}
+	
+	/**
+	 * Gets the printable name of a symbol in the current alphabet
+	 * @param symbol - the character, or the byte value
+	 * @return the character itself, or the byte value as a number
+	 */
+	private static String symbolName(int symbol)
+	{
+		if (alphabet == FileHeader.ALPHABET_CODE_POINTS)
+			return new String(Character.toChars(symbol));
+		if (alphabet != FileHeader.ALPHABET_BYTES)
+			return String.valueOf((char) symbol);
+		if (symbol == EOF_SYMBOL)
+			return "EOF";
+		return String.valueOf(symbol);
 	}
 	
 }
@@ -0,0 +1,322 @@
+package proj3;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+
+/**
+ * Pre-trained code for the byte alphabet, built once from a sample corpus and
+ * kept in its own table file. Small messages compressed with it skip the
+ * counting pass and carry only the ID of the table instead of a header with
+ * the whole code.
+ *
+ * Besides the byte values and the end of file symbol, the code has an escape
+ * symbol. A byte that never turned up in the corpus is written as the escape
+ * code followed by the byte in ESCAPE_BITS plain bits.
+ *
+ * Layout of a table file, big-endian:
+ *   int    magic number "HUFT"
+ *   byte   format version
+ *   int    table ID, a CRC-32 of the code lengths
+ *   then the code table, as FileHeader.writeCodeTable writes it (version 1
+ *   stored a short symbol and a byte length for each coded symbol instead)
+ *
+ * Layout of a message compressed with a table, big-endian:
+ *   int    magic number "HUFS"
+ *   byte   format version
+ *   int    table ID
+ *   the coded bits, ending with the end of file symbol
+ */
+public class StaticTable {
+
+	/**
+	 * Magic number identifying a table file
+	 */
+	public static final int TABLE_MAGIC = 0x48554654;
+	/**
+	 * Magic number identifying a message compressed with a table
+	 */
+	public static final int MAGIC = 0x48554653;
+	/**
+	 * Current format version of messages
+	 */
+	public static final int VERSION = 1;
+	/**
+	 * Current format version of table files
+	 */
+	public static final int TABLE_VERSION = 2;
+	/**
+	 * Symbol marking a byte that is sent in plain bits
+	 */
+	public static final int ESCAPE_SYMBOL = Proj3.EOF_SYMBOL + 1;
+	/**
+	 * Number of symbols: the 256 byte values, end of file and escape
+	 */
+	public static final int ALPHABET_SIZE = ESCAPE_SYMBOL + 1;
+	/**
+	 * Number of plain bits following an escape
+	 */
+	private static final int ESCAPE_BITS = 8;
+	/**
+	 * Extension of table files, which are named after their ID
+	 */
+	public static final String EXTENSION = ".huft";
+
+	/**
+	 * The ID of the table
+	 */
+	private int id;
+	/**
+	 * The trained code
+	 */
+	private CanonicalCode code;
+	/**
+	 * Codes as bits, indexed by symbol
+	 */
+	private long[] codeBits;
+	/**
+	 * Code lengths, indexed by symbol; 0 for bytes that must be escaped
+	 */
+	private int[] codeLengths;
+
+	/**
+	 * Constructor which wraps a trained code
+	 * @param code - a code over the byte alphabet that includes the end of file and escape symbols
+	 * @throws IllegalArgumentException - the code lacks the end of file or escape symbol
+	 */
+	public StaticTable(CanonicalCode code)
+	{
+		this.code = code;
+		this.codeBits = code.getCodeTable(ALPHABET_SIZE);
+		this.codeLengths = code.getLengthTable(ALPHABET_SIZE);
+		if (code.alphabetSize() > ALPHABET_SIZE || codeLengths[Proj3.EOF_SYMBOL] == 0 || codeLengths[ESCAPE_SYMBOL] == 0)
+			throw new IllegalArgumentException("A table needs the end of file and escape symbols");
+
+		CRC32 crc = new CRC32();
+		for (int i = 0; i < code.size(); i++)
+		{
+			crc.update(code.getSymbol(i) >>> 8);
+			crc.update(code.getSymbol(i));
+			crc.update(code.getLength(i));
+		}
+		this.id = (int) crc.getValue();
+	}
+
+	/**
+	 * Adds the symbols a table needs to the byte counts of a training corpus.
+	 * The escape symbol gets a count of one for each byte value missing from
+	 * the corpus, so that escapes stay cheap when many are expected.
+	 * @param byteCounts - the number of occurrences of each byte, indexed by byte value
+	 * @return counts indexed by symbol, end of file and escape included
+	 */
+	public static long[] trainingCounts(long[] byteCounts)
+	{
+		long[] counts = new long[ALPHABET_SIZE];
+		long missing = 0;
+		for (int b = 0; b < 256; b++)
+		{
+			counts[b] = byteCounts[b];
+			if (counts[b] == 0)
+				missing++;
+		}
+		counts[Proj3.EOF_SYMBOL] = 1;
+		counts[ESCAPE_SYMBOL] = Math.max(1, missing);
+		return counts;
+	}
+
+	/**
+	 * Gets the ID of the table
+	 * @return the ID
+	 */
+	public int getId()
+	{
+		return id;
+	}
+
+	/**
+	 * Gets the name of the file a table is kept in
+	 * @param dir - the directory holding tables
+	 * @param id - the ID of the table
+	 * @return the table file
+	 */
+	public static File fileFor(File dir, int id)
+	{
+		return new File(dir, String.format("%08x", id) + EXTENSION);
+	}
+
+	/**
+	 * Writes the table to its file in a directory
+	 * @param dir - the directory holding tables
+	 * @return the table file
+	 * @throws IOException - file IO error
+	 */
+	public File save(File dir) throws IOException
+	{
+		File file = fileFor(dir, id);
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+		try
+		{
+			out.writeInt(TABLE_MAGIC);
+			out.writeByte(TABLE_VERSION);
+			out.writeInt(id);
+			FileHeader.writeCodeTable(out, code);
+		}
+		finally
+		{
+			out.close();
+		}
+		return file;
+	}
+
+	/**
+	 * Reads a table by its ID from a directory
+	 * @param dir - the directory holding tables
+	 * @param id - the ID of the table
+	 * @return the table
+	 * @throws IOException - file IO error, or there is no valid table with that ID
+	 */
+	public static StaticTable load(File dir, int id) throws IOException
+	{
+		File file = fileFor(dir, id);
+		if (!file.isFile())
+			throw new IOException("No table " + String.format("%08x", id) + " in " + dir);
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			if (in.readInt() != TABLE_MAGIC)
+				throw new IOException("Not a table file: " + file);
+			int version = in.readUnsignedByte();
+			if (version < 1 || version > TABLE_VERSION)
+				throw new IOException("Unsupported table version " + version);
+			int storedId = in.readInt();
+			CanonicalCode code;
+			if (version >= 2)
+				code = FileHeader.readCodeTable(in, ALPHABET_SIZE);
+			else
+			{
+				int count = in.readInt();
+				if (count < 2 || count > ALPHABET_SIZE)
+					throw new IOException("Corrupt table file: " + file);
+				int[] symbols = new int[count];
+				int[] lengths = new int[count];
+				for (int i = 0; i < count; i++)
+				{
+					symbols[i] = in.readUnsignedShort();
+					lengths[i] = in.readUnsignedByte();
+				}
+				code = new CanonicalCode(symbols, lengths);
+			}
+			StaticTable table = new StaticTable(code);
+			if (table.getId() != storedId || storedId != id)
+				throw new IOException("Table file " + file + " does not hold table " + String.format("%08x", id));
+			return table;
+		}
+		catch (IllegalArgumentException e)
+		{
+			throw new IOException("Corrupt table file " + file + ": " + e.getMessage());
+		}
+		finally
+		{
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the ID of the table a message was compressed with
+	 * @param in - the stream at the start of the message
+	 * @return the table ID
+	 * @throws IOException - IO error, or the data is not a message compressed with a table
+	 */
+	public static int readId(InputStream in) throws IOException
+	{
+		DataInputStream data = new DataInputStream(in);
+		if (data.readInt() != MAGIC)
+			throw new IOException("Not compressed with a table");
+		int version = data.readUnsignedByte();
+		if (version != VERSION)
+			throw new IOException("Unsupported format version " + version);
+		return data.readInt();
+	}
+
+	/**
+	 * Compresses a stream with the table, with no counting pass
+	 * @param in - the data to be compressed
+	 * @param out - receives the compressed message
+	 * @throws IOException - IO error
+	 */
+	public void compress(InputStream in, OutputStream out) throws IOException
+	{
+		DataOutputStream data = new DataOutputStream(out);
+		data.writeInt(MAGIC);
+		data.writeByte(VERSION);
+		data.writeInt(id);
+		data.flush();
+
+		BitOutput bits = new BitOutput(out);
+		long escapeCode = codeBits[ESCAPE_SYMBOL];
+		int escapeLength = codeLengths[ESCAPE_SYMBOL];
+		byte[] buffer = new byte[1 << 16];
+		int n = in.read(buffer);
+		while (n != -1)
+		{
+			for (int i = 0; i < n; i++)
+			{
+				int key = buffer[i] & 0xFF;
+				if (codeLengths[key] != 0)
+					bits.writeBits(codeBits[key], codeLengths[key]);
+				else
+				{
+					//Two writes, since the escape code alone may take up to 63 bits
+					bits.writeBits(escapeCode, escapeLength);
+					bits.writeBits(key, ESCAPE_BITS);
+				}
+			}
+			n = in.read(buffer);
+		}
+		bits.writeBits(codeBits[Proj3.EOF_SYMBOL], codeLengths[Proj3.EOF_SYMBOL]);
+		bits.flush();
+	}
+
+	/**
+	 * Decompresses the coded bits of a message, after its ID has been read with readId
+	 * @param in - the coded bits
+	 * @param out - receives the original data
+	 * @throws IOException - IO error, or the message is truncated or corrupt
+	 */
+	public void decompress(InputStream in, OutputStream out) throws IOException
+	{
+		DecodeTable table = new DecodeTable(code);
+		BitInput bits = new BitInput(in);
+		byte[] buffer = new byte[1 << 16];
+		int pos = 0;
+		int symbol = table.decode(bits);
+		while (symbol != Proj3.EOF_SYMBOL)
+		{
+			if (symbol == ESCAPE_SYMBOL)
+			{
+				symbol = bits.peek(ESCAPE_BITS);
+				if (!bits.consume(ESCAPE_BITS))
+					symbol = -1;
+			}
+			if (symbol < 0 || symbol >= 256)
+				throw new IOException("Compressed message is truncated or corrupt");
+			if (pos == buffer.length)
+			{
+				out.write(buffer, 0, pos);
+				pos = 0;
+			}
+			buffer[pos++] = (byte) symbol;
+			symbol = table.decode(bits);
+		}
+		out.write(buffer, 0, pos);
+		out.flush();
+	}
+}
@@ -0,0 +1,138 @@
+package proj3;
+
+import java.util.Arrays;
+
+/**
+ * Numbers the distinct symbols of a large, sparse alphabet such as Unicode
+ * code points 0, 1, 2... in the order they are first seen, so that counts and
+ * codes can be kept in arrays the size of the symbols actually used rather
+ * than the size of the alphabet. The symbols are kept in an open addressing
+ * hash table of primitive ints with linear probing; nothing is boxed.
+ */
+public class SymbolIndex {
+
+	/**
+	 * Marks an empty slot; symbols are never negative
+	 */
+	private static final int EMPTY = -1;
+
+	/**
+	 * Symbol in each slot, or EMPTY
+	 */
+	private int[] slots;
+	/**
+	 * Index of the symbol in each slot
+	 */
+	private int[] indices;
+	/**
+	 * Symbol of each index
+	 */
+	private int[] symbols;
+	/**
+	 * Number of symbols
+	 */
+	private int size;
+	/**
+	 * 32 less the number of bits of a slot number
+	 */
+	private int shift;
+
+	/**
+	 * Constructor for an empty index
+	 */
+	public SymbolIndex()
+	{
+		slots = new int[256];
+		shift = 24;
+		Arrays.fill(slots, EMPTY);
+		indices = new int[slots.length];
+		symbols = new int[slots.length / 2];
+	}
+
+	/**
+	 * Gets the index of a symbol, giving it the next index if it has none yet
+	 * @param symbol - the symbol, not negative
+	 * @return the index of the symbol
+	 */
+	public int add(int symbol)
+	{
+		int slot = slot(symbol);
+		if (slots[slot] == symbol)
+			return indices[slot];
+		if (size == symbols.length)
+		{
+			grow();
+			slot = slot(symbol);
+		}
+		slots[slot] = symbol;
+		indices[slot] = size;
+		symbols[size] = symbol;
+		return size++;
+	}
+
+	/**
+	 * Gets the index of a symbol
+	 * @param symbol - the symbol
+	 * @return the index of the symbol, or -1 if it has none
+	 */
+	public int indexOf(int symbol)
+	{
+		int slot = slot(symbol);
+		return (slots[slot] == symbol) ? indices[slot] : -1;
+	}
+
+	/**
+	 * Gets the symbol with an index
+	 * @param index - the index, less than size()
+	 * @return the symbol
+	 */
+	public int symbolAt(int index)
+	{
+		return symbols[index];
+	}
+
+	/**
+	 * Gets the number of symbols
+	 * @return the number of symbols
+	 */
+	public int size()
+	{
+		return size;
+	}
+
+	/**
+	 * Finds the slot of a symbol, or the empty slot where it would go
+	 * @param symbol - the symbol
+	 * @return the slot
+	 */
+	private int slot(int symbol)
+	{
+		int mask = slots.length - 1;
+		int slot = (symbol * 0x9E3779B9) >>> shift;
+		while (slots[slot] != EMPTY && slots[slot] != symbol)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Doubles the table, keeping it at most half full
+	 */
+	private void grow()
+	{
+		int[] oldSlots = slots;
+		int[] oldIndices = indices;
+		slots = new int[oldSlots.length * 2];
+		shift--;
+		Arrays.fill(slots, EMPTY);
+		indices = new int[slots.length];
+		symbols = Arrays.copyOf(symbols, slots.length / 2);
+		for (int i = 0; i < oldSlots.length; i++)
+		{
+			if (oldSlots[i] == EMPTY)
+				continue;
+			int slot = slot(oldSlots[i]);
+			slots[slot] = oldSlots[i];
+			indices[slot] = oldIndices[i];
+		}
+	}
+}